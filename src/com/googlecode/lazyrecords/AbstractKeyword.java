@@ -14,7 +14,7 @@ public abstract class AbstractKeyword<T> extends AbstractMetadata<Keyword<T>> im
     }
     @Override
     public boolean equals(Object other) {
-        return other instanceof Keyword && Keyword.methods.equalTo(this, (Keyword) other);
+        return this == other || other instanceof Keyword && Keyword.methods.equalTo(this, (Keyword) other);
     }
 
 	// Thread-safe Racy Single Check Idiom (Effective Java 2nd Edition p.284)
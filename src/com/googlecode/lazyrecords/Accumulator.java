@@ -0,0 +1,11 @@
+package com.googlecode.lazyrecords;
+
+/** Mutable running state of one aggregate for one group */
+public interface Accumulator {
+    void add(Object value) throws Exception;
+
+    /** Merges a partial result for the same aggregate (accumulated over later rows) into this one */
+    void combine(Accumulator other) throws Exception;
+
+    Object value();
+}
@@ -0,0 +1,219 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.comparators.Maximum;
+import com.googlecode.totallylazy.comparators.Minimum;
+import com.googlecode.totallylazy.functions.Count;
+import com.googlecode.totallylazy.functions.FirstCombiner;
+import com.googlecode.totallylazy.functions.LastCombiner;
+import com.googlecode.totallylazy.functions.Reducer;
+import com.googlecode.totallylazy.numbers.Numbers;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * The accumulators for every aggregate of an Aggregates set for one group.
+ * Count, sum and average keep primitive running totals; every other reducer is applied to a single mutable slot,
+ * so adding a row does not build any intermediate Record.
+ * Partial results can only be combined when every reducer is {@link #mergeable(Reducer)}.
+ */
+public class Accumulators {
+    private final Aggregates aggregates;
+    private final Keyword<?>[] sources;
+    private final Accumulator[] accumulators;
+
+    Accumulators(Aggregates aggregates, Keyword<?>[] sources) {
+        this.aggregates = aggregates;
+        this.sources = sources;
+        this.accumulators = new Accumulator[sources.length];
+        int index = 0;
+        for (Aggregate<Object, Object> aggregate : aggregates.value()) {
+            accumulators[index++] = accumulator(aggregate);
+        }
+    }
+
+    public Accumulators add(Record record) throws Exception {
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i].add(record.get(sources[i]));
+        }
+        return this;
+    }
+
+    public Accumulators addAll(Iterable<? extends Record> records) throws Exception {
+        for (Record record : records) add(record);
+        return this;
+    }
+
+    /** @throws UnsupportedOperationException unless every aggregate is mergeable, see {@link Aggregates#mergeable()} */
+    public Accumulators combine(Accumulators other) throws Exception {
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i].combine(other.accumulators[i]);
+        }
+        return this;
+    }
+
+    public Record record() {
+        RecordLayout layout = aggregates.layout();
+        Object[] values = new Object[layout.size()];
+        int index = 0;
+        for (Aggregate<Object, Object> aggregate : aggregates.value()) {
+            values[layout.ordinal(aggregate)] = accumulators[index++].value();
+        }
+        return layout.record(values);
+    }
+
+    static Accumulator accumulator(Aggregate<Object, Object> aggregate) {
+        Reducer<Object, Object> reducer = aggregate.reducer();
+        if (reducer.getClass().equals(Count.count().getClass())) return new CountAccumulator();
+        if (reducer.getClass().equals(Numbers.sum().getClass())) return new SumAccumulator(false);
+        if (reducer.getClass().equals(Numbers.average().getClass())) return new SumAccumulator(true);
+        return new ReducerAccumulator(reducer);
+    }
+
+    static boolean mergeable(Reducer<?, ?> reducer) {
+        return reducer instanceof Mergeable || reducer instanceof Maximum || reducer instanceof Minimum ||
+                reducer instanceof FirstCombiner || reducer instanceof LastCombiner ||
+                reducer.getClass().equals(Count.count().getClass()) ||
+                reducer.getClass().equals(Numbers.sum().getClass()) ||
+                reducer.getClass().equals(Numbers.average().getClass());
+    }
+
+    static class CountAccumulator implements Accumulator {
+        private long count;
+
+        @Override
+        public void add(Object value) {
+            count++;
+        }
+
+        @Override
+        public void combine(Accumulator other) {
+            count += ((CountAccumulator) other).count;
+        }
+
+        @Override
+        public Object value() {
+            return count <= Integer.MAX_VALUE ? (Number) (int) count : (Number) count;
+        }
+    }
+
+    static class SumAccumulator implements Accumulator {
+        private final boolean average;
+        private boolean integers = true;
+        private boolean doubles;
+        private long longTotal;
+        private double doubleTotal;
+        private BigDecimal decimalTotal;
+        private long count;
+
+        SumAccumulator(boolean average) {
+            this.average = average;
+        }
+
+        @Override
+        public void add(Object value) {
+            if (value == null) return;
+            count++;
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                if (!(value instanceof Integer)) integers = false;
+                addLong(((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                addDouble(((Number) value).doubleValue());
+            } else {
+                addDecimal(new BigDecimal(value.toString()));
+            }
+        }
+
+        private void addLong(long value) {
+            if (decimalTotal != null) decimalTotal = decimalTotal.add(BigDecimal.valueOf(value));
+            else if (doubles) doubleTotal += value;
+            else {
+                long result = longTotal + value;
+                if (((longTotal ^ result) & (value ^ result)) < 0) {
+                    decimalTotal = BigDecimal.valueOf(longTotal).add(BigDecimal.valueOf(value));
+                } else {
+                    longTotal = result;
+                }
+            }
+        }
+
+        private void addDouble(double value) {
+            if (decimalTotal != null) decimalTotal = decimalTotal.add(BigDecimal.valueOf(value));
+            else {
+                if (!doubles) {
+                    doubles = true;
+                    doubleTotal = longTotal;
+                }
+                doubleTotal += value;
+            }
+        }
+
+        private void addDecimal(BigDecimal value) {
+            if (decimalTotal == null) decimalTotal = doubles ? BigDecimal.valueOf(doubleTotal) : BigDecimal.valueOf(longTotal);
+            decimalTotal = decimalTotal.add(value);
+        }
+
+        @Override
+        public void combine(Accumulator accumulator) {
+            SumAccumulator other = (SumAccumulator) accumulator;
+            if (other.decimalTotal != null) addDecimal(other.decimalTotal);
+            else if (other.doubles) addDouble(other.doubleTotal);
+            else addLong(other.longTotal);
+            integers &= other.integers;
+            count += other.count;
+        }
+
+        @Override
+        public Object value() {
+            return average ? average() : total();
+        }
+
+        private Number total() {
+            if (decimalTotal != null) return decimalTotal;
+            if (doubles) return doubleTotal;
+            if (integers && longTotal >= Integer.MIN_VALUE && longTotal <= Integer.MAX_VALUE) return (int) longTotal;
+            return longTotal;
+        }
+
+        private Number average() {
+            if (count == 0) return 0;
+            if (doubles && decimalTotal == null) return doubleTotal / count;
+            BigDecimal total = decimalTotal != null ? decimalTotal : new BigDecimal(BigInteger.valueOf(longTotal));
+            return total.divide(BigDecimal.valueOf(count), MathContext.DECIMAL128);
+        }
+    }
+
+    static class ReducerAccumulator implements Accumulator {
+        private final Reducer<Object, Object> reducer;
+        private Object value;
+        private boolean empty = true;
+
+        ReducerAccumulator(Reducer<Object, Object> reducer) {
+            this.reducer = reducer;
+            this.value = reducer.identity();
+        }
+
+        @Override
+        public void add(Object next) throws Exception {
+            value = reducer.call(value, next);
+            empty = false;
+        }
+
+        // Reducing the other partial result into this one only holds for mergeable reducers like first, last, maximum or minimum
+        @Override
+        public void combine(Accumulator accumulator) throws Exception {
+            if (!mergeable(reducer)) throw new UnsupportedOperationException("Can not combine partial results of " + reducer);
+            ReducerAccumulator other = (ReducerAccumulator) accumulator;
+            if (other.empty) return;
+            if (empty) value = other.value;
+            else value = reducer.call(value, other.value);
+            empty = false;
+        }
+
+        @Override
+        public Object value() {
+            return value;
+        }
+    }
+}
@@ -10,8 +10,31 @@ import static com.googlecode.totallylazy.Sequences.sequence;
 public class Aggregates implements Value<Sequence<Aggregate<Object, Object>>>, CurriedReducer<Record, Record> {
     private final Sequence<Aggregate<Object, Object>> aggregates;
 
+    private final Keyword<?>[] sources;
+    private final RecordLayout layout;
+
     private Aggregates(final Sequence<Aggregate<Object, Object>> aggregates) {
-        this.aggregates = aggregates;
+        this.aggregates = aggregates.realise();
+        this.sources = this.aggregates.map(Aggregate::source).toArray(Keyword.class);
+        this.layout = RecordLayout.layout(this.aggregates);
+    }
+
+    /** Fresh mutable state for one group, use it instead of call/identity to avoid building a Record per row */
+    public Accumulators accumulators() {
+        return new Accumulators(this, sources);
+    }
+
+    /** Whether partial results over separate chunks of the rows can be combined, see {@link Mergeable} */
+    public boolean mergeable() {
+        return aggregates.forAll(aggregate -> Accumulators.mergeable(aggregate.reducer()));
+    }
+
+    public Record aggregate(final Iterable<? extends Record> records) throws Exception {
+        return accumulators().addAll(records).record();
+    }
+
+    RecordLayout layout() {
+        return layout;
     }
 
     @Override
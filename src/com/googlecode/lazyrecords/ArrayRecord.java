@@ -0,0 +1,115 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Option;
+import com.googlecode.totallylazy.Pair;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.collections.ListMap;
+import com.googlecode.totallylazy.collections.PersistentMap;
+import com.googlecode.totallylazy.functions.Callables;
+import com.googlecode.totallylazy.predicates.Predicates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.googlecode.totallylazy.Option.option;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.functions.Callables.second;
+import static com.googlecode.totallylazy.predicates.Predicates.where;
+
+public class ArrayRecord implements Record {
+    private static final Object ABSENT = new Object();
+
+    private final RecordLayout layout;
+    private final Object[] values;
+    private final PersistentMap<Keyword<?>, Object> overflow;
+
+    // See RecordLayout.record to create
+    private ArrayRecord(RecordLayout layout, Object[] values, PersistentMap<Keyword<?>, Object> overflow) {
+        this.layout = layout;
+        this.values = values;
+        this.overflow = overflow;
+    }
+
+    static ArrayRecord empty(RecordLayout layout) {
+        Object[] values = new Object[layout.size()];
+        Arrays.fill(values, ABSENT);
+        return new ArrayRecord(layout, values, ListMap.<Keyword<?>, Object>emptyListMap());
+    }
+
+    static ArrayRecord record(RecordLayout layout, Object[] values) {
+        return new ArrayRecord(layout, checkSize(layout, values), ListMap.<Keyword<?>, Object>emptyListMap());
+    }
+
+    static ArrayRecord nonNullRecord(RecordLayout layout, Object[] values) {
+        checkSize(layout, values);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) values[i] = ABSENT;
+        }
+        return new ArrayRecord(layout, values, ListMap.<Keyword<?>, Object>emptyListMap());
+    }
+
+    private static Object[] checkSize(RecordLayout layout, Object[] values) {
+        if (values.length != layout.size()) {
+            throw new IllegalArgumentException("Expected " + layout.size() + " values but got " + values.length);
+        }
+        return values;
+    }
+
+    public RecordLayout layout() {
+        return layout;
+    }
+
+    public <T> T get(Keyword<T> keyword) {
+        int ordinal = layout.ordinal(keyword);
+        Object value = ordinal < 0 ? overflow.lookup(keyword).getOrNull() : values[ordinal];
+        return keyword.forClass().cast(value == ABSENT ? null : value);
+    }
+
+    @Override
+    public <T> Option<T> getOption(Keyword<T> keyword) {
+        return option(get(keyword));
+    }
+
+    public <T> Record set(Keyword<T> name, T value) {
+        int ordinal = layout.ordinal(name);
+        if (ordinal < 0) return new ArrayRecord(layout, values, overflow.insert(name, value));
+        Object[] copy = values.clone();
+        copy[ordinal] = value;
+        return new ArrayRecord(layout, copy, overflow);
+    }
+
+    public Sequence<Pair<Keyword<?>, Object>> fields() {
+        List<Pair<Keyword<?>, Object>> fields = new ArrayList<Pair<Keyword<?>, Object>>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != ABSENT) fields.add(Pair.<Keyword<?>, Object>pair(layout.keyword(i), values[i]));
+        }
+        return sequence(fields).join(overflow.toSequence());
+    }
+
+    public Sequence<Keyword<?>> keywords() {
+        return fields().map(Callables.<Keyword<?>>first());
+    }
+
+    public <T> Sequence<T> valuesFor(Sequence<? extends Keyword<? extends T>> keywords) {
+        return fields().
+                filter(where(Callables.<Keyword<?>>first(), Predicates.<Keyword<?>>in(keywords))).
+                map(second()).
+                unsafeCast();
+    }
+
+    @Override
+    public String toString() {
+        return fields().toString();
+    }
+
+    @Override
+    public final boolean equals(final Object o) {
+        return o instanceof Record && fields().equals(((Record) o).fields());
+    }
+
+    @Override
+    public final int hashCode() {
+        return fields().hashCode();
+    }
+}
@@ -0,0 +1,42 @@
+package com.googlecode.lazyrecords;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A handle that stops the queries started through it, e.g. when a caller abandons a request.
+ * Cancelling is cooperative: the running statement or search is asked to stop and the iterator fails with a
+ * CancellationException the next time it is read. Anything registered after cancel() is cancelled straight away.
+ */
+public class Cancellation {
+    private final Set<Cancellable> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public static Cancellation cancellation() {
+        return new Cancellation();
+    }
+
+    public <T extends Cancellable> T register(T cancellable) {
+        running.add(cancellable);
+        if (cancelled) cancellable.cancel();
+        return cancellable;
+    }
+
+    public void remove(Cancellable cancellable) {
+        running.remove(cancellable);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Cancellable cancellable : running) cancellable.cancel();
+        running.clear();
+    }
+
+    public boolean cancelled() {
+        return cancelled;
+    }
+
+    public interface Cancellable {
+        void cancel();
+    }
+}
@@ -0,0 +1,196 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Group;
+import com.googlecode.totallylazy.LazyException;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Value;
+import com.googlecode.totallylazy.functions.Function1;
+import com.googlecode.totallylazy.functions.Function2;
+import com.googlecode.totallylazy.functions.Lazy;
+import com.googlecode.totallylazy.predicates.Predicate;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * How computation that a backend could not push down ("moving computation to client") is run.
+ * Sequential by default; the parallel mode materialises the rows and splits them into chunks on a ForkJoinPool once
+ * there are at least threshold rows. With external memory sortBy and groupBy spill to disk instead of holding every row.
+ * Closing shuts down a pool created by parallel(parallelism, threshold) (shared with the executions derived from it);
+ * a pool passed in by the caller stays the caller's to shut down.
+ */
+public class ClientExecution implements Closeable {
+    private static final ClientExecution SEQUENTIAL = new ClientExecution(null, false, Integer.MAX_VALUE, null);
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int threshold;
+    private final ExternalMemory externalMemory;
+
+    private ClientExecution(ForkJoinPool pool, boolean ownsPool, int threshold, ExternalMemory externalMemory) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.threshold = Math.max(1, threshold);
+        this.externalMemory = externalMemory;
+    }
+
+    public static ClientExecution sequential() {
+        return SEQUENTIAL;
+    }
+
+    public static ClientExecution parallel(int parallelism, int threshold) {
+        return new ClientExecution(new ForkJoinPool(parallelism), true, threshold, null);
+    }
+
+    public static ClientExecution parallel(ForkJoinPool pool, int threshold) {
+        return new ClientExecution(pool, false, threshold, null);
+    }
+
+    public ClientExecution externalMemory(ExternalMemory externalMemory) {
+        return new ClientExecution(pool, ownsPool, threshold, externalMemory);
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) pool.shutdown();
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    public boolean spills() {
+        return externalMemory != null;
+    }
+
+    public <T> Sequence<T> sortBy(final Iterable<T> rows, final Comparator<? super T> comparator) {
+        if (externalMemory != null) return externalMemory.sortBy(rows, comparator);
+        return SortedSequence.sortedSequence(rows, comparator);
+    }
+
+    public <T> Sequence<T> filter(final Iterable<T> rows, final Predicate<? super T> predicate) {
+        return lazily(Lazy.lazy(() -> execute(rows, chunk -> {
+            List<T> result = new ArrayList<T>();
+            for (T row : chunk) if (predicate.matches(row)) result.add(row);
+            return result;
+        }, ClientExecution::join)));
+    }
+
+    public <T, S> Sequence<S> map(final Iterable<T> rows, final Function1<? super T, ? extends S> callable) {
+        return lazily(Lazy.lazy(() -> execute(rows, chunk -> {
+            List<S> result = new ArrayList<S>(chunk.size());
+            for (T row : chunk) result.add(callable.call(row));
+            return result;
+        }, ClientExecution::join)));
+    }
+
+    /** Aggregates that are not all mergeable run sequentially, as their partial results can not be combined */
+    public Record aggregate(final Iterable<? extends Record> rows, final Aggregates aggregates) {
+        if (!aggregates.mergeable()) {
+            try {
+                return aggregates.aggregate(rows);
+            } catch (Exception e) {
+                throw LazyException.lazyException(e);
+            }
+        }
+        return execute(rows, chunk -> aggregates.accumulators().addAll(chunk), Accumulators::combine).record();
+    }
+
+    public Sequence<Record> join(final Iterable<Record> rows, final Join join) {
+        if (externalMemory != null) return externalMemory.join(rows, join);
+        return join.hashJoin(rows);
+    }
+
+    public <T, K> Sequence<Group<K, T>> groupBy(final Iterable<T> rows, final Function1<? super T, ? extends K> callable) {
+        if (externalMemory != null) return externalMemory.groupBy(rows, callable);
+        return lazily(Lazy.lazy(() -> {
+            Map<K, List<T>> groups = execute(rows, chunk -> {
+                Map<K, List<T>> result = new LinkedHashMap<K, List<T>>();
+                for (T row : chunk) {
+                    K key = callable.call(row);
+                    List<T> group = result.get(key);
+                    if (group == null) result.put(key, group = new ArrayList<T>());
+                    group.add(row);
+                }
+                return result;
+            }, (first, second) -> {
+                for (Map.Entry<K, List<T>> entry : second.entrySet()) {
+                    List<T> group = first.get(entry.getKey());
+                    if (group == null) first.put(entry.getKey(), entry.getValue());
+                    else group.addAll(entry.getValue());
+                }
+                return first;
+            });
+            List<Group<K, T>> result = new ArrayList<Group<K, T>>(groups.size());
+            for (Map.Entry<K, List<T>> entry : groups.entrySet()) {
+                result.add(new Group<K, T>(entry.getKey(), entry.getValue()));
+            }
+            return result;
+        }));
+    }
+
+    private <T, R> R execute(Iterable<? extends T> rows, Function1<List<T>, R> leaf, Function2<R, R, R> combine) {
+        List<T> list = new ArrayList<T>();
+        for (T row : rows) list.add(row);
+        try {
+            if (pool == null || list.size() < threshold) return leaf.call(list);
+            int chunkSize = Math.max(threshold, list.size() / (pool.getParallelism() * 4));
+            return pool.invoke(new ChunkTask<T, R>(list, 0, list.size(), chunkSize, leaf, combine));
+        } catch (Exception e) {
+            throw LazyException.lazyException(e);
+        }
+    }
+
+    private static <T> List<T> join(List<T> first, List<T> second) {
+        first.addAll(second);
+        return first;
+    }
+
+    private static <T> Sequence<T> lazily(final Value<List<T>> value) {
+        return new Sequence<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return value.value().iterator();
+            }
+        };
+    }
+
+    private static class ChunkTask<T, R> extends RecursiveTask<R> {
+        private final List<T> rows;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+        private final Function1<List<T>, R> leaf;
+        private final Function2<R, R, R> combine;
+
+        private ChunkTask(List<T> rows, int start, int end, int chunkSize, Function1<List<T>, R> leaf, Function2<R, R, R> combine) {
+            this.rows = rows;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.leaf = leaf;
+            this.combine = combine;
+        }
+
+        @Override
+        protected R compute() {
+            try {
+                if (end - start <= chunkSize) return leaf.call(rows.subList(start, end));
+                int middle = (start + end) >>> 1;
+                ChunkTask<T, R> right = new ChunkTask<T, R>(rows, middle, end, chunkSize, leaf, combine);
+                right.fork();
+                R left = new ChunkTask<T, R>(rows, start, middle, chunkSize, leaf, combine).compute();
+                return combine.call(left, right.join());
+            } catch (Exception e) {
+                throw LazyException.lazyException(e);
+            }
+        }
+    }
+}
@@ -4,10 +4,15 @@ import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.functions.Callables;
 import com.googlecode.totallylazy.reflection.Fields;
 import com.googlecode.totallylazy.First;
+import com.googlecode.totallylazy.Pair;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.Unchecked;
 
 import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.googlecode.lazyrecords.Definition.constructors.definition;
 import static com.googlecode.lazyrecords.Record.constructors.record;
@@ -20,24 +25,53 @@ import static com.googlecode.totallylazy.Sequences.sequence;
 public interface Definition extends Named, Metadata<Definition>, Comparable<Definition> {
     Sequence<Keyword<?>> fields();
 
+    RecordLayout layout();
+
     Definition as(String name);
 
     class constructors {
+        private static final ConcurrentMap<Pair<Class<?>, String>, Definition> definitions = new ConcurrentHashMap<Pair<Class<?>, String>, Definition>();
+
         public static <T extends Definition> T definition(final Class<T> definition) {
             return definition(definition, definition.getSimpleName().toLowerCase());
         }
 
         public static <T extends Definition> T definition(Class<T> definition, String name) {
+            Pair<Class<?>, String> key = Pair.<Class<?>, String>pair(definition, name);
+            Definition cached = definitions.get(key);
+            if (cached == null) {
+                cached = proxy(definition, name);
+                Definition existing = definitions.putIfAbsent(key, cached);
+                if (existing != null) cached = existing;
+            }
+            return Unchecked.<T>cast(cached);
+        }
+
+        private static <T extends Definition> T proxy(Class<T> definition, String name) {
             final RecordDefinition recordDefinition = new RecordDefinition(name, record(), fields(definition));
             return Unchecked.<T>cast(Proxy.newProxyInstance(Definition.class.getClassLoader(), new Class[]{definition},
-                    (proxy, method, args) -> method.invoke(recordDefinition, args)));
+                    new DefinitionInvocationHandler(recordDefinition)));
         }
 
-        private static <T extends Definition> Sequence<Keyword<?>> fields(Class<T> definition) {
-            return sequence(definition.getDeclaredFields()).
-                    filter(where(Fields.type, is(classAssignableTo(Keyword.class)))).
-                    map(Fields.value(null)).
-                    unsafeCast();
+        // Typed definitions usually create themselves before their keywords are initialised so resolve the fields lazily,
+        // but only once they are all there
+        private static <T extends Definition> Sequence<Keyword<?>> fields(final Class<T> definition) {
+            return sequence(new Iterable<Keyword<?>>() {
+                private volatile List<Keyword<?>> resolved;
+
+                @Override
+                public Iterator<Keyword<?>> iterator() {
+                    List<Keyword<?>> fields = resolved;
+                    if (fields != null) return fields.iterator();
+                    fields = sequence(definition.getDeclaredFields()).
+                            filter(where(Fields.type, is(classAssignableTo(Keyword.class)))).
+                            map(Fields.value(null)).
+                            <Keyword<?>>unsafeCast().
+                            toList();
+                    if (!fields.contains(null)) resolved = fields;
+                    return fields.iterator();
+                }
+            });
         }
 
         public static Definition definition(final String name, Record metadata, final Iterable<? extends Keyword<?>> fields) {
@@ -65,6 +99,11 @@ public interface Definition extends Named, Metadata<Definition>, Comparable<Defi
         public static Definition replace(Definition definition, Keyword<?> from, Keyword<?> to) {
             return definition(definition.name(), definition.fields().map(Keyword.functions.replace(from, to)));
         }
+
+        /** The fields flagged with a boolean metadata keyword such as {@link Keywords#unique} or {@link Keywords#indexed} */
+        public static Sequence<Keyword<?>> marked(Definition definition, Keyword<Boolean> flag) {
+            return definition.fields().filter(where(Keyword.functions.metadata(flag), is(true))).realise();
+        }
     }
 
     class functions {
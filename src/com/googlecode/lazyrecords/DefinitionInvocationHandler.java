@@ -0,0 +1,55 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Unchecked;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+// Dispatches the Definition methods straight to the backing definition, only falling back to reflection for anything else
+class DefinitionInvocationHandler implements InvocationHandler {
+    private final Definition definition;
+
+    DefinitionInvocationHandler(Definition definition) {
+        this.definition = definition;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        int arity = args == null ? 0 : args.length;
+        switch (method.getName()) {
+            case "fields":
+                if (arity == 0) return definition.fields();
+                break;
+            case "name":
+                if (arity == 0) return definition.name();
+                break;
+            case "layout":
+                if (arity == 0) return definition.layout();
+                break;
+            case "metadata":
+                if (arity == 0) return definition.metadata();
+                if (arity == 1 && args[0] instanceof Record) return definition.metadata((Record) args[0]);
+                if (arity == 1 && args[0] instanceof Keyword) return definition.metadata((Keyword<?>) args[0]);
+                if (arity == 2 && args[0] instanceof Keyword) return definition.metadata(Unchecked.<Keyword<Object>>cast(args[0]), args[1]);
+                break;
+            case "as":
+                if (arity == 1 && args[0] instanceof String) return definition.as((String) args[0]);
+                break;
+            case "hashCode":
+                if (arity == 0) return definition.hashCode();
+                break;
+            case "equals":
+                if (arity == 1) return definition.equals(args[0]);
+                break;
+            case "toString":
+                if (arity == 0) return definition.toString();
+                break;
+        }
+        try {
+            return method.invoke(definition, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Group;
+import com.googlecode.totallylazy.LazyException;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.functions.Function1;
+import com.googlecode.totallylazy.iterators.StatefulIterator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static com.googlecode.totallylazy.Closeables.safeClose;
+import static com.googlecode.totallylazy.Sequences.sequence;
+
+/**
+ * Client side sortBy, groupBy and join that keep at most rowsInMemory rows on the heap.
+ * Sorting spills sorted runs to temporary files and merges them lazily (stable, like Sequence.sortBy);
+ * grouping and equi joins hash partition the rows to temporary files and work one partition at a time, so groups
+ * and joined rows come back in order within a partition rather than overall.
+ * Each iteration re-reads the source and the files are removed once the result has been fully read; an iteration that
+ * is abandoned part way removes them when its iterator (which is Closeable once anything has spilled) is closed.
+ */
+public class ExternalMemory {
+    private static final int PARTITIONS = 64;
+
+    private final int rowsInMemory;
+    private final File directory;
+
+    private ExternalMemory(int rowsInMemory, File directory) {
+        if (rowsInMemory < 1) throw new IllegalArgumentException("rowsInMemory must be positive");
+        this.rowsInMemory = rowsInMemory;
+        this.directory = directory;
+    }
+
+    public static ExternalMemory externalMemory(int rowsInMemory) {
+        return externalMemory(rowsInMemory, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    public static ExternalMemory externalMemory(int rowsInMemory, File directory) {
+        return new ExternalMemory(rowsInMemory, directory);
+    }
+
+    public <T> Sequence<T> sortBy(final Iterable<? extends T> rows, final Comparator<? super T> comparator) {
+        return new Sequence<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return sort(rows.iterator(), comparator);
+            }
+        };
+    }
+
+    public <T, K> Sequence<Group<K, T>> groupBy(final Iterable<? extends T> rows, final Function1<? super T, ? extends K> callable) {
+        return new Sequence<Group<K, T>>() {
+            @Override
+            public Iterator<Group<K, T>> iterator() {
+                return group(rows.iterator(), callable);
+            }
+        };
+    }
+
+    /** Same as rows.flatMap(join) but spills both sides to partitions when the joined records do not fit in memory */
+    public Sequence<Record> join(final Iterable<Record> rows, final Join join) {
+        return new Sequence<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                return ExternalMemory.this.join(rows.iterator(), join);
+            }
+        };
+    }
+
+    private <T> Iterator<T> sort(Iterator<? extends T> rows, Comparator<? super T> comparator) {
+        Spill spill = new Spill(directory);
+        try {
+            List<Iterator<T>> runs = new ArrayList<Iterator<T>>();
+            List<T> buffer = new ArrayList<T>();
+            while (rows.hasNext()) {
+                buffer.add(rows.next());
+                if (buffer.size() < rowsInMemory) continue;
+                Collections.sort(buffer, comparator);
+                Spill.Writer writer = spill.writer().writeAll(buffer);
+                writer.close();
+                runs.add(spill.<T>read(writer.file()));
+                buffer.clear();
+            }
+            Collections.sort(buffer, comparator);
+            if (runs.isEmpty()) {
+                spill.close();
+                return buffer.iterator();
+            }
+            runs.add(buffer.iterator());
+            return new MergeIterator<T>(runs, comparator, spill);
+        } catch (Exception e) {
+            spill.close();
+            throw LazyException.lazyException(e);
+        } finally {
+            if (rows instanceof Closeable) safeClose((Closeable) rows);
+        }
+    }
+
+    private <T, K> Iterator<Group<K, T>> group(Iterator<? extends T> rows, final Function1<? super T, ? extends K> callable) {
+        final Spill spill = new Spill(directory);
+        try {
+            Map<K, List<T>> groups = new LinkedHashMap<K, List<T>>();
+            int count = 0;
+            while (rows.hasNext() && count < rowsInMemory) {
+                T row = rows.next();
+                add(groups, callable.call(row), row);
+                count++;
+            }
+            if (!rows.hasNext()) {
+                spill.close();
+                return groups(groups).iterator();
+            }
+
+            final List<Spill.Writer> partitions = new ArrayList<Spill.Writer>(PARTITIONS);
+            for (int i = 0; i < PARTITIONS; i++) partitions.add(spill.writer());
+            for (Map.Entry<K, List<T>> entry : groups.entrySet()) {
+                partitions.get(partition(entry.getKey())).writeAll(entry.getValue());
+            }
+            groups.clear();
+            while (rows.hasNext()) {
+                T row = rows.next();
+                partitions.get(partition(callable.call(row))).write(row);
+            }
+            for (Spill.Writer partition : partitions) partition.close();
+
+            return new SpilledIterator<Group<K, T>>(spill) {
+                private int partition = 0;
+                private Iterator<Group<K, T>> current = Collections.<Group<K, T>>emptyList().iterator();
+
+                @Override
+                protected Group<K, T> getNext() throws Exception {
+                    while (!current.hasNext()) {
+                        if (partition == PARTITIONS) {
+                            spill.close();
+                            return finished();
+                        }
+                        Map<K, List<T>> partitionGroups = new LinkedHashMap<K, List<T>>();
+                        Iterator<T> partitionRows = spill.read(partitions.get(partition++).file());
+                        while (partitionRows.hasNext()) {
+                            T row = partitionRows.next();
+                            add(partitionGroups, callable.call(row), row);
+                        }
+                        current = groups(partitionGroups).iterator();
+                    }
+                    return current.next();
+                }
+            };
+        } catch (Exception e) {
+            spill.close();
+            throw LazyException.lazyException(e);
+        } finally {
+            if (rows instanceof Closeable) safeClose((Closeable) rows);
+        }
+    }
+
+    private Iterator<Record> join(final Iterator<Record> rows, final Join join) {
+        if (!join.hashable()) return sequence(iterable(rows)).flatMap(join).iterator();
+        final Spill spill = new Spill(directory);
+        Iterator<Record> records = join.records().iterator();
+        try {
+            List<Record> buffer = new ArrayList<Record>();
+            while (records.hasNext() && buffer.size() < rowsInMemory) buffer.add(records.next());
+            if (!records.hasNext()) {
+                spill.close();
+                final Map<Object, List<Record>> index = join.index(buffer);
+                return sequence(iterable(rows)).flatMap(record -> join.join(record, join.matches(index, record))).iterator();
+            }
+
+            final List<Spill.Writer> right = new ArrayList<Spill.Writer>(PARTITIONS);
+            final List<Spill.Writer> left = new ArrayList<Spill.Writer>(PARTITIONS);
+            for (int i = 0; i < PARTITIONS; i++) {
+                right.add(spill.writer());
+                left.add(spill.writer());
+            }
+            for (Record record : buffer) right.get(partition(join.key(record, false))).write(record);
+            buffer.clear();
+            while (records.hasNext()) {
+                Record record = records.next();
+                right.get(partition(join.key(record, false))).write(record);
+            }
+            while (rows.hasNext()) {
+                Record record = rows.next();
+                left.get(partition(join.key(record, true))).write(record);
+            }
+            for (int i = 0; i < PARTITIONS; i++) {
+                right.get(i).close();
+                left.get(i).close();
+            }
+
+            return new SpilledIterator<Record>(spill) {
+                private int partition = 0;
+                private Iterator<Record> current = Collections.<Record>emptyList().iterator();
+
+                @Override
+                protected Record getNext() throws Exception {
+                    while (!current.hasNext()) {
+                        if (partition == PARTITIONS) {
+                            spill.close();
+                            return finished();
+                        }
+                        final Map<Object, List<Record>> index = join.index(iterable(spill.<Record>read(right.get(partition).file())));
+                        Iterator<Record> probe = spill.read(left.get(partition++).file());
+                        current = sequence(iterable(probe)).flatMap(record -> join.join(record, join.matches(index, record))).iterator();
+                    }
+                    return current.next();
+                }
+            };
+        } catch (Exception e) {
+            spill.close();
+            throw LazyException.lazyException(e);
+        } finally {
+            if (records instanceof Closeable) safeClose((Closeable) records);
+        }
+    }
+
+    private static <T> Iterable<T> iterable(final Iterator<T> iterator) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return iterator;
+            }
+        };
+    }
+
+    private static int partition(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % PARTITIONS;
+    }
+
+    private static <K, T> void add(Map<K, List<T>> groups, K key, T row) {
+        List<T> group = groups.get(key);
+        if (group == null) groups.put(key, group = new ArrayList<T>());
+        group.add(row);
+    }
+
+    private static <K, T> List<Group<K, T>> groups(Map<K, List<T>> groups) {
+        List<Group<K, T>> result = new ArrayList<Group<K, T>>(groups.size());
+        for (Map.Entry<K, List<T>> entry : groups.entrySet()) {
+            result.add(new Group<K, T>(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    private static abstract class SpilledIterator<T> extends StatefulIterator<T> implements Closeable {
+        protected final Spill spill;
+
+        private SpilledIterator(Spill spill) {
+            this.spill = spill;
+        }
+
+        @Override
+        public void close() throws IOException {
+            spill.close();
+        }
+    }
+
+    private static class MergeIterator<T> extends SpilledIterator<T> {
+        private final PriorityQueue<Run<T>> queue;
+
+        private MergeIterator(List<Iterator<T>> runs, final Comparator<? super T> comparator, Spill spill) {
+            super(spill);
+            this.queue = new PriorityQueue<Run<T>>(runs.size(), new Comparator<Run<T>>() {
+                @Override
+                public int compare(Run<T> a, Run<T> b) {
+                    int result = comparator.compare(a.head, b.head);
+                    return result != 0 ? result : Integer.compare(a.index, b.index);
+                }
+            });
+            for (int i = 0; i < runs.size(); i++) {
+                Run<T> run = new Run<T>(i, runs.get(i));
+                if (run.advance()) queue.add(run);
+            }
+        }
+
+        @Override
+        protected T getNext() throws Exception {
+            Run<T> run = queue.poll();
+            if (run == null) {
+                close();
+                return finished();
+            }
+            T result = run.head;
+            if (run.advance()) queue.add(run);
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            queue.clear();
+            super.close();
+        }
+    }
+
+    private static class Run<T> {
+        private final int index;
+        private final Iterator<T> rows;
+        private T head;
+
+        private Run(int index, Iterator<T> rows) {
+            this.index = index;
+            this.rows = rows;
+        }
+
+        private boolean advance() {
+            if (!rows.hasNext()) return false;
+            head = rows.next();
+            return true;
+        }
+    }
+}
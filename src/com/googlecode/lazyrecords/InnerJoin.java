@@ -10,8 +10,8 @@ public class InnerJoin extends Join {
         super(records, using);
     }
 
-    public Iterable<Record> call(Record record) throws Exception {
-        return records.filter(using.call(record)).map(merge(record));
+    public Iterable<Record> join(Record record, Sequence<Record> matches) throws Exception {
+        return matches.map(merge(record));
     }
 
     public static Join innerJoin(final Sequence<Record> records, final Joiner using) {
@@ -2,9 +2,28 @@ package com.googlecode.lazyrecords;
 
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Sequences;
+import com.googlecode.totallylazy.predicates.EqualsBinaryPredicate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.googlecode.totallylazy.Sequences.sequence;
 import static com.googlecode.totallylazy.Unchecked.cast;
 
+/**
+ * Joins each record to the matching records.
+ * Called one record at a time (flatMap) it filters the records for every record it joins. For equi joins (On with
+ * equality or Using) {@link #hashJoin(Iterable)} instead builds a hash table at the start of each iteration, so joining
+ * n rows to m records is O(n + m) and never sees stale records. The table holds the records, as neither size is known
+ * up front; when the rows are the smaller side (a few hits joined to a large table) {@link #hashJoin(Iterable, boolean)}
+ * holds the rows instead.
+ * Either way the rows come out in the order of the rows being joined, each followed by its matches in record order.
+ */
 public abstract class Join implements Function1<Record, Iterable<Record>> {
     protected final Sequence<Record> records;
     protected final Joiner using;
@@ -22,6 +41,96 @@ public abstract class Join implements Function1<Record, Iterable<Record>> {
         return using;
     }
 
+    public Iterable<Record> call(Record record) throws Exception {
+        return join(record, matches(record));
+    }
+
+    /** Combines a record with the records it matched */
+    public abstract Iterable<Record> join(Record record, Sequence<Record> matches) throws Exception;
+
+    protected Sequence<Record> matches(Record record) throws Exception {
+        return records.filter(using.call(record));
+    }
+
+    /** Same as rows.flatMap(this), but an equi join hashes the records once per iteration instead of filtering them per row */
+    public Sequence<Record> hashJoin(final Iterable<Record> rows) {
+        return hashJoin(rows, false);
+    }
+
+    /**
+     * With hashRows the rows are held in the hash table and the records streamed past them, which suits a few rows
+     * joined to many records; otherwise the records are held and the rows streamed.
+     */
+    public Sequence<Record> hashJoin(final Iterable<Record> rows, final boolean hashRows) {
+        if (!hashable()) return sequence(rows).flatMap(this);
+        return new Sequence<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                if (hashRows) return hashRows(rows);
+                final Map<Object, List<Record>> index = index(records);
+                return sequence(rows).flatMap(record -> join(record, matches(index, record))).iterator();
+            }
+        };
+    }
+
+    private Iterator<Record> hashRows(Iterable<Record> rows) {
+        List<Record> left = sequence(rows).toList();
+        Map<Object, List<Integer>> positions = new HashMap<Object, List<Integer>>();
+        for (int i = 0; i < left.size(); i++) {
+            Object key = key(left.get(i), true);
+            List<Integer> matches = positions.get(key);
+            if (matches == null) positions.put(key, matches = new ArrayList<Integer>());
+            matches.add(i);
+        }
+        List<List<Record>> matched = new ArrayList<List<Record>>(left.size());
+        for (int i = 0; i < left.size(); i++) matched.add(null);
+        for (Record record : records) {
+            List<Integer> matches = positions.get(key(record, false));
+            if (matches == null) continue;
+            for (Integer position : matches) {
+                if (matched.get(position) == null) matched.set(position, new ArrayList<Record>());
+                matched.get(position).add(record);
+            }
+        }
+        return sequence(left).zip(sequence(matched)).flatMap(pair ->
+                join(pair.first(), pair.second() == null ? Sequences.<Record>empty() : sequence(pair.second()))).iterator();
+    }
+
+    Sequence<Record> matches(Map<Object, List<Record>> index, Record record) {
+        List<Record> matches = index.get(key(record, true));
+        return matches == null ? Sequences.<Record>empty() : sequence(matches);
+    }
+
+    /** @return true when the joiner only tests keywords for equality, so records can be matched on a hash key */
+    public boolean hashable() {
+        if (using instanceof Using) return true;
+        return using instanceof On && ((On<?>) using).predicate() instanceof EqualsBinaryPredicate;
+    }
+
+    /** The hash key of a record on the left (the record being joined) or the right (one of the records) side */
+    public Object key(Record record, boolean left) {
+        if (using instanceof On) {
+            On<?> on = (On<?>) using;
+            return record.get(left ? on.left() : on.right());
+        }
+        Sequence<Keyword<?>> keywords = ((Using) using).keywords();
+        Object[] values = new Object[keywords.size()];
+        int i = 0;
+        for (Keyword<?> keyword : keywords) values[i++] = record.get(keyword);
+        return Arrays.asList(values);
+    }
+
+    Map<Object, List<Record>> index(Iterable<Record> records) {
+        Map<Object, List<Record>> index = new HashMap<Object, List<Record>>();
+        for (Record record : records) {
+            Object key = key(record, false);
+            List<Record> matches = index.get(key);
+            if (matches == null) index.put(key, matches = new ArrayList<Record>());
+            matches.add(record);
+        }
+        return index;
+    }
+
     public static Join join(Sequence<Record> records, Joiner using) {
         return InnerJoin.innerJoin(records, using);
     }
@@ -0,0 +1,115 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.lazyrecords.mappings.StringMappings;
+import com.googlecode.totallylazy.Pair;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Unchecked;
+import com.googlecode.totallylazy.annotations.multimethod;
+import com.googlecode.totallylazy.comparators.AscendingComparator;
+import com.googlecode.totallylazy.comparators.CompositeComparator;
+import com.googlecode.totallylazy.comparators.DescendingComparator;
+import com.googlecode.totallylazy.functions.Function1;
+import com.googlecode.totallylazy.multi;
+import com.googlecode.totallylazy.predicates.LogicalPredicate;
+import com.googlecode.totallylazy.predicates.Predicate;
+import com.googlecode.totallylazy.predicates.Predicates;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.googlecode.totallylazy.Pair.pair;
+import static com.googlecode.totallylazy.Sequences.one;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.predicates.Predicates.and;
+import static com.googlecode.totallylazy.predicates.Predicates.is;
+import static com.googlecode.totallylazy.predicates.Predicates.or;
+import static com.googlecode.totallylazy.predicates.Predicates.where;
+
+/**
+ * Keyset (seek) paging: the rows after a given row in a sort order, as a predicate on the sort keys instead of an offset.
+ * (k1, k2) > (v1, v2) is expanded to k1 > v1 or (k1 = v1 and k2 > v2) so it works without row value support.
+ * The order should end in a unique keyword and the sort keys should not be null.
+ */
+public class Keyset {
+    private static final String NULL = "~";
+    private static final StringMappings mappings = StringMappings.javaMappings();
+
+    private static multi multi;
+    /** The sort keys of a comparator, paired with true when descending */
+    public static Sequence<Pair<Keyword<?>, Boolean>> keys(Comparator<? super Record> comparator) {
+        if (multi == null) multi = new multi() {};
+        return multi.<Sequence<Pair<Keyword<?>, Boolean>>>methodOption(comparator).getOrThrow(new UnsupportedOperationException("Unsupported comparator " + comparator));
+    }
+
+    @multimethod public static Sequence<Pair<Keyword<?>, Boolean>> keys(AscendingComparator<? super Record, ?> comparator) {
+        return one(pair(keyword(comparator.callable()), false));
+    }
+
+    @multimethod public static Sequence<Pair<Keyword<?>, Boolean>> keys(DescendingComparator<? super Record, ?> comparator) {
+        return one(pair(keyword(comparator.callable()), true));
+    }
+
+    @multimethod public static Sequence<Pair<Keyword<?>, Boolean>> keys(CompositeComparator<? super Record> comparator) {
+        return comparator.comparators().flatMap(keys());
+    }
+
+    private static Function1<Comparator<? super Record>, Sequence<Pair<Keyword<?>, Boolean>>> keys() {
+        return Keyset::keys;
+    }
+
+    public static LogicalPredicate<Record> after(Comparator<? super Record> comparator, Record last) {
+        Sequence<Pair<Keyword<?>, Boolean>> keys = keys(comparator).realise();
+        List<Predicate<Record>> alternatives = new ArrayList<Predicate<Record>>();
+        for (int i = 0; i < keys.size(); i++) {
+            List<Predicate<Record>> parts = new ArrayList<Predicate<Record>>();
+            for (Pair<Keyword<?>, Boolean> equal : keys.take(i)) parts.add(where(Unchecked.<Keyword<Object>>cast(equal.first()), is((Object) value(last, equal.first()))));
+            Pair<Keyword<?>, Boolean> key = keys.get(i);
+            Comparable<Object> value = value(last, key.first());
+            Predicate<Object> beyond = Unchecked.cast(key.second() ? Predicates.lessThan(value) : Predicates.greaterThan(value));
+            parts.add(where(Unchecked.<Keyword<Object>>cast(key.first()), beyond));
+            alternatives.add(Unchecked.<Predicate<Record>>cast(and(sequence(parts).toArray(Predicate.class))));
+        }
+        return or(sequence(alternatives).toArray(Predicate.class));
+    }
+
+    /** An opaque, URL safe token of the sort key values of the last row */
+    public static String cursor(Comparator<? super Record> comparator, Record last) {
+        return keys(comparator).map(key -> encode(mappings.toString(Unchecked.<Class<Object>>cast(key.first().forClass()), last.get(key.first())))).toString(".");
+    }
+
+    public static Record record(Comparator<? super Record> comparator, String cursor) {
+        Sequence<Pair<Keyword<?>, Boolean>> keys = keys(comparator).realise();
+        String[] values = cursor.split("\\.", -1);
+        if (values.length != keys.size()) throw new IllegalArgumentException("Cursor does not match the sort order: " + cursor);
+        Record record = Record.constructors.record();
+        for (int i = 0; i < values.length; i++) {
+            Keyword<Object> keyword = Unchecked.cast(keys.get(i).first());
+            record = record.set(keyword, mappings.toValue(Unchecked.<Class<Object>>cast(keyword.forClass()), decode(values[i])));
+        }
+        return record;
+    }
+
+    private static Comparable<Object> value(Record record, Keyword<?> keyword) {
+        Object value = record.get(keyword);
+        if (value == null) throw new IllegalArgumentException("Keyset paging needs a value for " + keyword);
+        return Unchecked.cast(value);
+    }
+
+    private static Keyword<?> keyword(Function1<?, ?> callable) {
+        if (callable instanceof Keyword) return (Keyword<?>) callable;
+        throw new UnsupportedOperationException("Unsupported sort key " + callable);
+    }
+
+    private static String encode(String value) {
+        if (value == null) return NULL;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        if (value.equals(NULL)) return null;
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+}
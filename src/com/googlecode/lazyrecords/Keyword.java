@@ -7,6 +7,9 @@ import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.functions.Unary;
 import com.googlecode.totallylazy.predicates.Predicates;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import static com.googlecode.totallylazy.functions.Functions.returns1;
 import static com.googlecode.totallylazy.predicates.Predicates.where;
 import static com.googlecode.totallylazy.Strings.equalIgnoringCase;
@@ -17,12 +20,25 @@ public interface Keyword<T> extends Named, Metadata<Keyword<T>>, Function1<Recor
     public String toString();
 
     class constructors {
+        private static final int MAX_INTERNED = 10000;
+        private static final ConcurrentMap<Pair<String, Class<?>>, ImmutableKeyword<?>> interned = new ConcurrentHashMap<Pair<String, Class<?>>, ImmutableKeyword<?>>();
+
         public static ImmutableKeyword<Object> keyword(String value) {
-            return new ImmutableKeyword<Object>(value, Object.class);
+            return keyword(value, Object.class);
         }
 
         public static <T> ImmutableKeyword<T> keyword(String value, Class<? extends T> aClass) {
-            return new ImmutableKeyword<T>(value, aClass);
+            if (value == null) return new ImmutableKeyword<T>(value, aClass);
+            Pair<String, Class<?>> key = Pair.<String, Class<?>>pair(value, aClass);
+            ImmutableKeyword<?> keyword = interned.get(key);
+            if (keyword == null) {
+                keyword = new ImmutableKeyword<T>(value, aClass);
+                if (interned.size() < MAX_INTERNED) {
+                    ImmutableKeyword<?> existing = interned.putIfAbsent(key, keyword);
+                    if (existing != null) keyword = existing;
+                }
+            }
+            return Unchecked.cast(keyword);
         }
 
         public static <T> ImmutableKeyword<T> keyword(Keyword<? extends T> keyword) {
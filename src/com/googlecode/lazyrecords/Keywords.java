@@ -6,8 +6,10 @@ import com.googlecode.totallylazy.Sequence;
 import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
 
 public class Keywords {
+    /** Marks the keywords that together make up a definition's natural key, not keywords that are each unique on their own */
     public static final Keyword<Boolean> unique = Keyword.constructors.keyword("unique", Boolean.class);
     public static final Keyword<Boolean> indexed = Keyword.constructors.keyword("indexed", Boolean.class);
+    public static final Keyword<Boolean> sortable = Keyword.constructors.keyword("sortable", Boolean.class);
     public static final Keyword<String> qualifier = Keyword.constructors.keyword("qualifier", String.class);
     public static final Keyword<String> alias = Keyword.constructors.keyword("alias", String.class);
     public static final Keyword<Object> star = Keyword.constructors.keyword("*");
@@ -0,0 +1,9 @@
+package com.googlecode.lazyrecords;
+
+/**
+ * Marks a reducer whose partial results can be reduced into each other: it is associative and its result is of its
+ * element type, so an aggregate over it can be computed in chunks whose {@link Accumulators} are then combined.
+ * The built in count, sum, average, first, last, maximum and minimum reducers are mergeable without the marker.
+ */
+public interface Mergeable {
+}
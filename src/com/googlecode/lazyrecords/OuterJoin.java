@@ -10,8 +10,7 @@ public class OuterJoin extends Join {
         super(records, using);
     }
 
-    public Iterable<Record> call(Record record) throws Exception {
-        Sequence<Record> matches = records.filter(using.call(record));
+    public Iterable<Record> join(Record record, Sequence<Record> matches) throws Exception {
         if (matches.isEmpty())
             return sequence(record);
         return matches.map(merge(record));
@@ -0,0 +1,203 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.LazyException;
+import com.googlecode.totallylazy.Unchecked;
+import com.googlecode.totallylazy.annotations.multimethod;
+import com.googlecode.totallylazy.multi;
+import com.googlecode.totallylazy.predicates.AlwaysFalse;
+import com.googlecode.totallylazy.predicates.AlwaysTrue;
+import com.googlecode.totallylazy.predicates.AndPredicate;
+import com.googlecode.totallylazy.predicates.Between;
+import com.googlecode.totallylazy.predicates.EqualsPredicate;
+import com.googlecode.totallylazy.predicates.GreaterThan;
+import com.googlecode.totallylazy.predicates.GreaterThanOrEqualTo;
+import com.googlecode.totallylazy.predicates.InPredicate;
+import com.googlecode.totallylazy.predicates.LessThan;
+import com.googlecode.totallylazy.predicates.LessThanOrEqualTo;
+import com.googlecode.totallylazy.predicates.LogicalPredicate;
+import com.googlecode.totallylazy.predicates.Not;
+import com.googlecode.totallylazy.predicates.NullPredicate;
+import com.googlecode.totallylazy.predicates.OrPredicate;
+import com.googlecode.totallylazy.predicates.Predicate;
+import com.googlecode.totallylazy.predicates.WherePredicate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns a record predicate into one that works directly on the stored rows of a backend.
+ * Fields are resolved to their position in the layout up front; anything that cannot be compiled falls back to
+ * matching the record built from the row.
+ */
+public abstract class PredicateCompiler<R> {
+    protected final RecordLayout layout;
+
+    protected PredicateCompiler(RecordLayout layout) {
+        this.layout = layout;
+    }
+
+    /** @return the decoded value of the field at this position of the layout */
+    protected abstract Object value(R row, int ordinal) throws Exception;
+
+    protected abstract Record record(R row) throws Exception;
+
+    private multi compileP;
+    public LogicalPredicate<R> compile(Predicate<? super Record> predicate) {
+        if (compileP == null) compileP = new multi(){};
+        return compileP.<LogicalPredicate<R>>methodOption(predicate).getOrElse(fallback(predicate));
+    }
+    @multimethod public LogicalPredicate<R> compile(WherePredicate<Record, ?> predicate) { return where(predicate); }
+    @multimethod public LogicalPredicate<R> compile(AndPredicate<Record> predicate) { return and(predicate.predicates().map(p -> compile(p)).toList()); }
+    @multimethod public LogicalPredicate<R> compile(OrPredicate<Record> predicate) { return or(predicate.predicates().map(p -> compile(p)).toList()); }
+    @multimethod public LogicalPredicate<R> compile(Not<Record> predicate) { return not(compile(predicate.predicate())); }
+    @multimethod public LogicalPredicate<R> compile(AlwaysTrue predicate) { return constant(true); }
+    @multimethod public LogicalPredicate<R> compile(AlwaysFalse predicate) { return constant(false); }
+
+    private multi compileKP;
+    public LogicalPredicate<R> compile(int ordinal, Predicate<?> predicate) {
+        if (compileKP == null) compileKP = new multi(){};
+        return compileKP.<LogicalPredicate<R>>methodOption(ordinal, predicate).getOrElse(matches(ordinal, predicate));
+    }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, EqualsPredicate<?> predicate) { return equalTo(ordinal, predicate.value()); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, GreaterThan<?> predicate) { return compare(ordinal, predicate.value(), 1, 1); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, GreaterThanOrEqualTo<?> predicate) { return compare(ordinal, predicate.value(), 0, 1); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, LessThan<?> predicate) { return compare(ordinal, predicate.value(), -1, -1); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, LessThanOrEqualTo<?> predicate) { return compare(ordinal, predicate.value(), -1, 0); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, Between<?> predicate) { return and(compare(ordinal, predicate.lower(), 0, 1), compare(ordinal, predicate.upper(), -1, 0)); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, Not<?> predicate) { return not(compile(ordinal, predicate.predicate())); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, InPredicate<?> predicate) { return in(ordinal, predicate.values()); }
+    @multimethod public LogicalPredicate<R> compile(Integer ordinal, NullPredicate<?> predicate) { return nullValue(ordinal); }
+
+    protected LogicalPredicate<R> where(WherePredicate<Record, ?> where) {
+        if (!(where.callable() instanceof Keyword)) return fallback(where);
+        int ordinal = layout.ordinal(((Keyword<?>) where.callable()).name());
+        if (ordinal < 0) return fallback(where);
+        return compile(ordinal, where.predicate());
+    }
+
+    protected LogicalPredicate<R> equalTo(final int ordinal, final Object expected) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                Object actual = valueOf(row, ordinal);
+                return expected == null ? actual == null : expected.equals(actual);
+            }
+        };
+    }
+
+    /** Matches when the field compared to the value gives a result between min and max (each -1, 0 or 1) */
+    protected LogicalPredicate<R> compare(final int ordinal, final Object value, final int min, final int max) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                Comparable<Object> actual = Unchecked.cast(valueOf(row, ordinal));
+                if (actual == null || value == null) return false;
+                int result = Integer.signum(actual.compareTo(value));
+                return result >= min && result <= max;
+            }
+        };
+    }
+
+    protected LogicalPredicate<R> in(final int ordinal, Iterable<?> values) {
+        final Set<Object> expected = new HashSet<Object>();
+        for (Object value : values) expected.add(value);
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return expected.contains(valueOf(row, ordinal));
+            }
+        };
+    }
+
+    protected LogicalPredicate<R> nullValue(final int ordinal) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return valueOf(row, ordinal) == null;
+            }
+        };
+    }
+
+    protected LogicalPredicate<R> matches(final int ordinal, Predicate<?> predicate) {
+        final Predicate<Object> valuePredicate = Unchecked.cast(predicate);
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return valuePredicate.matches(valueOf(row, ordinal));
+            }
+        };
+    }
+
+    protected Object valueOf(R row, int ordinal) {
+        try {
+            return value(row, ordinal);
+        } catch (Exception e) {
+            throw LazyException.lazyException(e);
+        }
+    }
+
+    private LogicalPredicate<R> fallback(final Predicate<? super Record> predicate) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                try {
+                    return predicate.matches(record(row));
+                } catch (Exception e) {
+                    throw LazyException.lazyException(e);
+                }
+            }
+        };
+    }
+
+    private LogicalPredicate<R> and(final List<LogicalPredicate<R>> predicates) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                for (int i = 0; i < predicates.size(); i++) {
+                    if (!predicates.get(i).matches(row)) return false;
+                }
+                return true;
+            }
+        };
+    }
+
+    private LogicalPredicate<R> and(final LogicalPredicate<R> first, final LogicalPredicate<R> second) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return first.matches(row) && second.matches(row);
+            }
+        };
+    }
+
+    private LogicalPredicate<R> or(final List<LogicalPredicate<R>> predicates) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                for (int i = 0; i < predicates.size(); i++) {
+                    if (predicates.get(i).matches(row)) return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private LogicalPredicate<R> not(final LogicalPredicate<R> predicate) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return !predicate.matches(row);
+            }
+        };
+    }
+
+    private LogicalPredicate<R> constant(final boolean result) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,212 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Unchecked;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.googlecode.totallylazy.Sequences.sequence;
+
+/** A block of rows stored column by column; Integer, Long, Boolean and Date columns are kept as primitive arrays */
+public class RecordBatch {
+    private final RecordLayout layout;
+    private final int size;
+    private final Object[] columns;
+    private final BitSet[] nulls;
+
+    private RecordBatch(RecordLayout layout, int size, Object[] columns, BitSet[] nulls) {
+        this.layout = layout;
+        this.size = size;
+        this.columns = columns;
+        this.nulls = nulls;
+    }
+
+    public static Builder builder(RecordLayout layout, int capacity) {
+        return new Builder(layout, capacity);
+    }
+
+    public RecordLayout layout() {
+        return layout;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int column, int row) {
+        return nulls[column].get(row);
+    }
+
+    public int getInt(int column, int row) {
+        return ((int[]) columns[column])[row];
+    }
+
+    public long getLong(int column, int row) {
+        return ((long[]) columns[column])[row];
+    }
+
+    public boolean getBoolean(int column, int row) {
+        return ((boolean[]) columns[column])[row];
+    }
+
+    /** Raw int/long/boolean column (Date columns are milliseconds since the epoch) or Object[] for anything else */
+    public Object column(int column) {
+        return columns[column];
+    }
+
+    public Object get(int column, int row) {
+        if (isNull(column, row)) return null;
+        Object values = columns[column];
+        if (values instanceof int[]) return ((int[]) values)[row];
+        if (values instanceof long[]) {
+            long value = ((long[]) values)[row];
+            return layout.keyword(column).forClass().equals(Date.class) ? new Date(value) : (Object) value;
+        }
+        if (values instanceof boolean[]) return ((boolean[]) values)[row];
+        return ((Object[]) values)[row];
+    }
+
+    public <T> T get(Keyword<T> keyword, int row) {
+        int column = layout.ordinal(keyword);
+        return column < 0 ? null : Unchecked.<T>cast(get(column, row));
+    }
+
+    public Record record(int row) {
+        Object[] values = new Object[layout.size()];
+        for (int column = 0; column < values.length; column++) {
+            values[column] = get(column, row);
+        }
+        return layout.nonNullRecord(values);
+    }
+
+    public Sequence<Record> records() {
+        List<Record> records = new ArrayList<Record>(size);
+        for (int row = 0; row < size; row++) {
+            records.add(record(row));
+        }
+        return sequence(records);
+    }
+
+    @Override
+    public String toString() {
+        return records().toString();
+    }
+
+    public interface Filler<T> {
+        void fill(T row, Builder builder) throws Exception;
+    }
+
+    public static class Builder {
+        private final RecordLayout layout;
+        private final int capacity;
+        private Object[] columns;
+        private BitSet[] nulls;
+        private int row;
+
+        private Builder(RecordLayout layout, int capacity) {
+            if (capacity <= 0) throw new IllegalArgumentException("capacity must be greater than 0");
+            this.layout = layout;
+            this.capacity = capacity;
+            reset();
+        }
+
+        private void reset() {
+            columns = new Object[layout.size()];
+            nulls = new BitSet[layout.size()];
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = newColumn(layout.keyword(column).forClass(), capacity);
+                nulls[column] = new BitSet(capacity);
+                nulls[column].set(0, capacity);
+            }
+            row = 0;
+        }
+
+        private static Object newColumn(Class<?> aClass, int capacity) {
+            if (aClass.equals(Integer.class) || aClass.equals(int.class)) return new int[capacity];
+            if (aClass.equals(Long.class) || aClass.equals(long.class) || aClass.equals(Date.class)) return new long[capacity];
+            if (aClass.equals(Boolean.class) || aClass.equals(boolean.class)) return new boolean[capacity];
+            return new Object[capacity];
+        }
+
+        public RecordLayout layout() {
+            return layout;
+        }
+
+        public int size() {
+            return row;
+        }
+
+        public boolean isFull() {
+            return row == capacity;
+        }
+
+        public Builder setInt(int column, int value) {
+            ((int[]) columns[column])[row] = value;
+            nulls[column].clear(row);
+            return this;
+        }
+
+        public Builder setLong(int column, long value) {
+            ((long[]) columns[column])[row] = value;
+            nulls[column].clear(row);
+            return this;
+        }
+
+        public Builder setBoolean(int column, boolean value) {
+            ((boolean[]) columns[column])[row] = value;
+            nulls[column].clear(row);
+            return this;
+        }
+
+        public Builder set(int column, Object value) {
+            if (value == null) return this;
+            Object values = columns[column];
+            if (values instanceof int[]) return setInt(column, ((Number) value).intValue());
+            if (values instanceof long[]) return setLong(column, value instanceof Date ? ((Date) value).getTime() : ((Number) value).longValue());
+            if (values instanceof boolean[]) return setBoolean(column, (Boolean) value);
+            ((Object[]) values)[row] = value;
+            nulls[column].clear(row);
+            return this;
+        }
+
+        public Builder set(Record record) {
+            for (int column = 0; column < columns.length; column++) {
+                set(column, record.get(layout.keyword(column)));
+            }
+            return this;
+        }
+
+        /** Finishes the current row, any column that was not set is null */
+        public Builder next() {
+            if (isFull()) throw new IllegalStateException("Batch is full");
+            row++;
+            return this;
+        }
+
+        /** Hands out the rows added so far and starts a new batch */
+        public RecordBatch build() {
+            RecordBatch batch = new RecordBatch(layout, row, columns, nulls);
+            reset();
+            return batch;
+        }
+    }
+
+    public static class methods {
+        public static Sequence<RecordBatch> batches(final Iterable<Record> records, final RecordLayout layout, final int batchSize) {
+            return batches(records, layout, batchSize, (record, builder) -> builder.set(record));
+        }
+
+        public static <T> Sequence<RecordBatch> batches(final Iterable<? extends T> rows, final RecordLayout layout, final int batchSize, final Filler<? super T> filler) {
+            return sequence(new Iterable<RecordBatch>() {
+                @Override
+                public Iterator<RecordBatch> iterator() {
+                    return new RecordBatchIterator<T>(rows.iterator(), RecordBatch.builder(layout, batchSize), filler);
+                }
+            });
+        }
+    }
+}
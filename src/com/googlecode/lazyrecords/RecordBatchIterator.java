@@ -0,0 +1,39 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.iterators.StatefulIterator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+import static com.googlecode.totallylazy.Closeables.safeClose;
+
+public class RecordBatchIterator<T> extends StatefulIterator<RecordBatch> implements Closeable {
+    private final Iterator<? extends T> rows;
+    private final RecordBatch.Builder builder;
+    private final RecordBatch.Filler<? super T> filler;
+
+    public RecordBatchIterator(Iterator<? extends T> rows, RecordBatch.Builder builder, RecordBatch.Filler<? super T> filler) {
+        this.rows = rows;
+        this.builder = builder;
+        this.filler = filler;
+    }
+
+    @Override
+    protected RecordBatch getNext() throws Exception {
+        while (!builder.isFull() && rows.hasNext()) {
+            filler.fill(rows.next(), builder);
+            builder.next();
+        }
+        if (builder.size() == 0) {
+            close();
+            return finished();
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rows instanceof Closeable) safeClose((Closeable) rows);
+    }
+}
@@ -7,6 +7,8 @@ import static com.googlecode.totallylazy.Sequences.sequence;
 public class RecordDefinition extends AbstractMetadata<Definition> implements Definition {
     private final String name;
     private final Sequence<Keyword<?>> fields;
+    // Thread-safe Racy Single Check Idiom (Effective Java 2nd Edition p.284)
+    private RecordLayout layout;
 
     // See Definition.constructors.definition to construct
     RecordDefinition(final String name, Record metadata, final Iterable<? extends Keyword<?>> fields) {
@@ -42,6 +44,17 @@ public class RecordDefinition extends AbstractMetadata<Definition> implements De
         return fields;
     }
 
+    // A typed definition can be asked before its interface has initialised its keywords, which must not be cached
+    @Override
+    public RecordLayout layout() {
+        if (layout == null) {
+            if (fields.toList().contains(null))
+                throw new IllegalStateException("The keywords of " + name + " are not initialised yet");
+            layout = RecordLayout.layout(fields);
+        }
+        return layout;
+    }
+
     @Override
     public Definition as(String name) {
         return metadata(Keywords.alias, name);
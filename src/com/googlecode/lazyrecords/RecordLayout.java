@@ -0,0 +1,86 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Unchecked;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.googlecode.totallylazy.Sequences.sequence;
+
+public class RecordLayout {
+    private final Keyword<?>[] keywords;
+    private final Map<Keyword<?>, Integer> ordinals;
+    private final Map<String, Integer> names;
+
+    private RecordLayout(final Sequence<Keyword<?>> fields) {
+        this.ordinals = new HashMap<Keyword<?>, Integer>();
+        for (Keyword<?> keyword : fields) {
+            if (!ordinals.containsKey(keyword)) ordinals.put(keyword, ordinals.size());
+        }
+        this.keywords = new Keyword<?>[ordinals.size()];
+        for (Map.Entry<Keyword<?>, Integer> entry : ordinals.entrySet()) {
+            keywords[entry.getValue()] = entry.getKey();
+        }
+        this.names = new HashMap<String, Integer>();
+        for (int i = 0; i < keywords.length; i++) {
+            String name = keywords[i].name();
+            if (!names.containsKey(name)) names.put(name, i);
+            if (!names.containsKey(name.toLowerCase(Locale.ROOT))) names.put(name.toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    public static RecordLayout layout(final Definition definition) {
+        return definition.layout();
+    }
+
+    public static RecordLayout layout(final Iterable<? extends Keyword<?>> fields) {
+        return new RecordLayout(sequence(fields).<Keyword<?>>unsafeCast());
+    }
+
+    public int size() {
+        return keywords.length;
+    }
+
+    public Keyword<?> keyword(int ordinal) {
+        return keywords[ordinal];
+    }
+
+    public Sequence<Keyword<?>> keywords() {
+        return sequence(keywords);
+    }
+
+    /** @return the position of the keyword in this layout or -1 if the keyword is not part of it */
+    public int ordinal(Keyword<?> keyword) {
+        Integer ordinal = ordinals.get(keyword);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /** Same result as {@link Keyword.methods#matchKeyword(String, Sequence)} but without scanning the fields */
+    public Keyword<Object> matchKeyword(String name) {
+        int ordinal = ordinal(name);
+        return ordinal < 0 ? Keyword.constructors.keyword(name) : Unchecked.<Keyword<Object>>cast(keywords[ordinal]);
+    }
+
+    /** @return the position of the keyword with this name (ignoring case) or -1 if there is none */
+    public int ordinal(String name) {
+        Integer ordinal = names.get(name);
+        if (ordinal == null) ordinal = names.get(name.toLowerCase(Locale.ROOT));
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public Record record() {
+        return ArrayRecord.empty(this);
+    }
+
+    /** Every slot is a field of the record, null values included (like building a record from all the definition fields) */
+    public Record record(Object[] values) {
+        return ArrayRecord.record(this, values);
+    }
+
+    /** Only non null slots become fields of the record (like a SQL row with the null columns filtered out) */
+    public Record nonNullRecord(Object[] values) {
+        return ArrayRecord.nonNullRecord(this, values);
+    }
+}
@@ -4,4 +4,8 @@ import com.googlecode.totallylazy.Sequence;
 
 public interface RecordsReader {
     Sequence<Record> get(Definition definition);
+
+    default Sequence<RecordBatch> batches(Definition definition, int batchSize) {
+        return RecordBatch.methods.batches(get(definition), definition.layout(), batchSize);
+    }
 }
@@ -12,7 +12,7 @@ public class ReducingRecordsMapper implements Function1<Sequence<Record>, Record
 
     @Override
     public Record call(Sequence<Record> records) throws Exception {
-        return records.reduce(aggregates);
+        return aggregates.aggregate(records);
     }
 
     public Sequence<Aggregate<Object, Object>> aggregates() {
@@ -0,0 +1,141 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Option;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.functions.Function1;
+import com.googlecode.totallylazy.predicates.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A client side sort that only sorts as much as is asked for.
+ * take(n) keeps a bounded heap of the n first rows (O(N log n) time, O(n) memory) and head() is a single pass,
+ * both giving the same (stable) result as sorting everything.
+ */
+public class SortedSequence<T> extends Sequence<T> {
+    private final Iterable<T> rows;
+    private final Comparator<? super T> comparator;
+
+    private SortedSequence(Iterable<T> rows, Comparator<? super T> comparator) {
+        this.rows = rows;
+        this.comparator = comparator;
+    }
+
+    public static <T> SortedSequence<T> sortedSequence(Iterable<T> rows, Comparator<? super T> comparator) {
+        return new SortedSequence<T>(rows, comparator);
+    }
+
+    /** Wraps rows so a later client side sortBy (after any filter or map) returns a SortedSequence */
+    public static <T> Sequence<T> sortable(final Iterable<T> rows) {
+        return new Sequence<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return rows.iterator();
+            }
+
+            @Override
+            public Sequence<T> filter(Predicate<? super T> predicate) {
+                return sortable(super.filter(predicate));
+            }
+
+            @Override
+            public <S> Sequence<S> map(Function1<? super T, ? extends S> callable) {
+                return sortable(super.map(callable));
+            }
+
+            @Override
+            public Sequence<T> sortBy(Comparator<? super T> comparator) {
+                return sortedSequence(this, comparator);
+            }
+        };
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        List<T> result = new ArrayList<T>();
+        for (T row : rows) result.add(row);
+        Collections.sort(result, comparator);
+        return result.iterator();
+    }
+
+    @Override
+    public Sequence<T> take(final int count) {
+        final SortedSequence<T> sorted = this;
+        return new Sequence<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return sorted.top(count).iterator();
+            }
+        };
+    }
+
+    @Override
+    public T head() {
+        Iterator<T> iterator = firstSorted();
+        if (!iterator.hasNext()) throw new NoSuchElementException();
+        return iterator.next();
+    }
+
+    @Override
+    public Option<T> headOption() {
+        Iterator<T> iterator = firstSorted();
+        return iterator.hasNext() ? Option.some(iterator.next()) : Option.<T>none();
+    }
+
+    private Iterator<T> firstSorted() {
+        boolean found = false;
+        T result = null;
+        for (T row : rows) {
+            if (!found || comparator.compare(row, result) < 0) result = row;
+            found = true;
+        }
+        return found ? Collections.singletonList(result).iterator() : Collections.<T>emptyIterator();
+    }
+
+    private List<T> top(int count) {
+        if (count <= 0) return Collections.emptyList();
+        // Max heap of the best rows so far; ties are broken on arrival so the result matches a stable sort
+        Comparator<Ranked<T>> ranking = ranking();
+        PriorityQueue<Ranked<T>> heap = new PriorityQueue<Ranked<T>>(Math.min(count, 1024), Collections.reverseOrder(ranking));
+        long index = 0;
+        for (T row : rows) {
+            Ranked<T> ranked = new Ranked<T>(row, index++);
+            if (heap.size() < count) heap.add(ranked);
+            else if (ranking.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        }
+        List<Ranked<T>> ranked = new ArrayList<Ranked<T>>(heap);
+        Collections.sort(ranked, ranking);
+        List<T> result = new ArrayList<T>(ranked.size());
+        for (Ranked<T> row : ranked) result.add(row.value);
+        return result;
+    }
+
+    private Comparator<Ranked<T>> ranking() {
+        return new Comparator<Ranked<T>>() {
+            @Override
+            public int compare(Ranked<T> a, Ranked<T> b) {
+                int result = comparator.compare(a.value, b.value);
+                return result != 0 ? result : Long.compare(a.index, b.index);
+            }
+        };
+    }
+
+    private static class Ranked<T> {
+        private final T value;
+        private final long index;
+
+        private Ranked(T value, long index) {
+            this.value = value;
+            this.index = index;
+        }
+    }
+}
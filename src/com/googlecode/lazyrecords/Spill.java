@@ -0,0 +1,243 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Pair;
+import com.googlecode.totallylazy.Unchecked;
+import com.googlecode.totallylazy.iterators.StatefulIterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.googlecode.totallylazy.Closeables.safeClose;
+
+/**
+ * Temporary files holding rows that did not fit in memory.
+ * Rows are written in a compact tagged binary form; records only store the index of their keywords (kept in memory
+ * for the life of the spill) followed by their values, so they read back with the very same keywords.
+ * Any Record is written as its fields, so records read back as plain records (a SourceRecord loses its source).
+ * Other values that are not one of the common field types must be Serializable.
+ * Each file is deleted as soon as it has been read to the end, and close deletes whatever is left.
+ */
+class Spill implements Closeable {
+    private static final int BUFFER = 64 * 1024;
+    private static final byte END = 0, NULL = 1, STRING = 2, INTEGER = 3, LONG = 4, BOOLEAN = 5, DOUBLE = 6, DATE = 7, DECIMAL = 8, RECORD = 9, FIELDS = 10, OBJECT = 11;
+
+    private final File directory;
+    private final List<File> files = new ArrayList<File>();
+    private final List<Closeable> streams = new ArrayList<Closeable>();
+    private final List<Keyword<?>> keywords = new ArrayList<Keyword<?>>();
+    private final Map<Keyword<?>, Integer> keywordIndexes = new HashMap<Keyword<?>, Integer>();
+    private final List<RecordLayout> layouts = new ArrayList<RecordLayout>();
+    private final Map<List<Keyword<?>>, Integer> layoutIndexes = new HashMap<List<Keyword<?>>, Integer>();
+
+    Spill(File directory) {
+        this.directory = directory;
+    }
+
+    Writer writer() throws IOException {
+        File file = File.createTempFile("lazyrecords", ".spill", directory);
+        files.add(file);
+        return new Writer(file);
+    }
+
+    <T> StatefulIterator<T> read(final File file) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER));
+        streams.add(input);
+        return new StatefulIterator<T>() {
+            @Override
+            protected T getNext() throws Exception {
+                byte tag = input.readByte();
+                if (tag == END) {
+                    safeClose(input);
+                    streams.remove(input);
+                    if (files.remove(file)) file.delete();
+                    return finished();
+                }
+                return Unchecked.cast(read(tag, input));
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        for (Closeable stream : streams) safeClose(stream);
+        streams.clear();
+        for (File file : files) file.delete();
+        files.clear();
+    }
+
+    class Writer implements Closeable {
+        private final File file;
+        private final DataOutputStream output;
+        private boolean closed;
+
+        private Writer(File file) throws IOException {
+            this.file = file;
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER));
+            streams.add(output);
+        }
+
+        Writer write(Object value) throws IOException {
+            Spill.this.write(output, value);
+            return this;
+        }
+
+        Writer writeAll(Iterable<?> values) throws IOException {
+            for (Object value : values) write(value);
+            return this;
+        }
+
+        File file() {
+            return file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            output.writeByte(END);
+            output.close();
+            streams.remove(output);
+        }
+    }
+
+    private void write(DataOutputStream output, Object value) throws IOException {
+        if (value == null) output.writeByte(NULL);
+        else if (value instanceof String) {
+            output.writeByte(STRING);
+            writeString(output, (String) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(INTEGER);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte(BOOLEAN);
+            output.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value.getClass().equals(Date.class)) {
+            output.writeByte(DATE);
+            output.writeLong(((Date) value).getTime());
+        } else if (value instanceof BigDecimal) {
+            output.writeByte(DECIMAL);
+            writeString(output, value.toString());
+        } else if (value instanceof Record) {
+            writeRecord(output, (Record) value);
+        } else {
+            output.writeByte(OBJECT);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objects = new ObjectOutputStream(bytes);
+            objects.writeObject(value);
+            objects.close();
+            output.writeInt(bytes.size());
+            bytes.writeTo(output);
+        }
+    }
+
+    private void writeRecord(DataOutputStream output, Record record) throws IOException {
+        List<Pair<Keyword<?>, Object>> fields = record.fields().toList();
+        List<Keyword<?>> recordKeywords = new ArrayList<Keyword<?>>(fields.size());
+        for (Pair<Keyword<?>, Object> field : fields) recordKeywords.add(field.first());
+        Integer layout = layoutIndexes.get(recordKeywords);
+        if (layout == null) {
+            RecordLayout recordLayout = RecordLayout.layout(recordKeywords);
+            if (recordLayout.size() == recordKeywords.size()) {
+                layout = layouts.size();
+                layouts.add(recordLayout);
+                layoutIndexes.put(recordKeywords, layout);
+            }
+        }
+        if (layout != null) {
+            output.writeByte(RECORD);
+            output.writeInt(layout);
+            for (Pair<Keyword<?>, Object> field : fields) write(output, field.second());
+            return;
+        }
+        output.writeByte(FIELDS);
+        output.writeInt(fields.size());
+        for (Pair<Keyword<?>, Object> field : fields) {
+            output.writeInt(keywordIndex(field.first()));
+            write(output, field.second());
+        }
+    }
+
+    private int keywordIndex(Keyword<?> keyword) {
+        Integer index = keywordIndexes.get(keyword);
+        if (index == null) {
+            keywordIndexes.put(keyword, index = keywords.size());
+            keywords.add(keyword);
+        }
+        return index;
+    }
+
+    private Object read(byte tag, DataInputStream input) throws Exception {
+        switch (tag) {
+            case NULL: return null;
+            case STRING: return readString(input);
+            case INTEGER: return input.readInt();
+            case LONG: return input.readLong();
+            case BOOLEAN: return input.readBoolean();
+            case DOUBLE: return input.readDouble();
+            case DATE: return new Date(input.readLong());
+            case DECIMAL: return new BigDecimal(readString(input));
+            case RECORD: {
+                RecordLayout layout = layouts.get(input.readInt());
+                Object[] values = new Object[layout.size()];
+                for (int i = 0; i < values.length; i++) values[i] = read(input.readByte(), input);
+                return layout.record(values);
+            }
+            case FIELDS: {
+                int size = input.readInt();
+                Record record = Record.constructors.record();
+                for (int i = 0; i < size; i++) {
+                    Keyword<Object> keyword = Unchecked.cast(keywords.get(input.readInt()));
+                    record = record.set(keyword, read(input.readByte(), input));
+                }
+                return record;
+            }
+            case OBJECT: {
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return objects.readObject();
+                } finally {
+                    objects.close();
+                }
+            }
+            default: throw new IOException("Corrupt spill file, unknown tag " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
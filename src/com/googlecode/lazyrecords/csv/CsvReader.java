@@ -2,6 +2,8 @@ package com.googlecode.lazyrecords.csv;
 
 import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.RecordBatch;
+import com.googlecode.lazyrecords.RecordLayout;
 import com.googlecode.totallylazy.*;
 import com.googlecode.totallylazy.parser.Parser;
 
@@ -23,6 +25,11 @@ public interface CsvReader {
         return read(new StringReader(value));
     }
 
+    default Sequence<RecordBatch> batches(Reader reader, int batchSize) {
+        Sequence<Record> records = read(reader).realise();
+        return RecordBatch.methods.batches(records, RecordLayout.layout(Keyword.methods.keywords(records)), batchSize);
+    }
+
     class Grammar {
         public static final char QUOTE = '"';
         public static final char COMMA = ',';
@@ -46,6 +53,23 @@ public interface CsvReader {
             return records(keywords, allLines.subList(1, allLines.size()));
         }
 
+        @Override
+        public Sequence<RecordBatch> batches(Reader reader, int batchSize) {
+            List<List<String>> allLines = Grammar.ROW.parse(reader).value();
+            Sequence<Keyword<String>> keywords = keywords(allLines.get(0));
+            RecordLayout layout = RecordLayout.layout(keywords);
+            final int[] ordinals = new int[keywords.size()];
+            int index = 0;
+            for (Keyword<String> keyword : keywords) {
+                ordinals[index++] = layout.ordinal(keyword);
+            }
+            return RecordBatch.methods.<List<String>>batches(allLines.subList(1, allLines.size()), layout, batchSize, (fields, builder) -> {
+                for (int i = 0; i < Math.min(fields.size(), ordinals.length); i++) {
+                    builder.set(ordinals[i], fields.get(i));
+                }
+            });
+        }
+
         private Sequence<Record> records(final Sequence<Keyword<String>> keywords, Iterable<List<String>> rows) {
             return sequence(rows).map(fields -> record(keywords.zip(fields))).realise();
         }
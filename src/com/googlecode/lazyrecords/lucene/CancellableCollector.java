@@ -0,0 +1,54 @@
+package com.googlecode.lazyrecords.lucene;
+
+import com.googlecode.lazyrecords.Cancellation;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TimeLimitingCollector;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+/** Stops collecting as soon as the cancellation is cancelled, so an abandoned search does not run to completion */
+public class CancellableCollector extends Collector {
+    private final Collector collector;
+    private final Cancellation cancellation;
+
+    public CancellableCollector(Collector collector, Cancellation cancellation) {
+        this.collector = collector;
+        this.cancellation = cancellation;
+    }
+
+    /** A timeout other than 0 also stops the search (with a TimeExceededException) after that many milliseconds */
+    public static Collector limited(Collector collector, long timeoutMillis, Cancellation cancellation) {
+        Collector cancellable = new CancellableCollector(collector, cancellation);
+        if (timeoutMillis <= 0) return cancellable;
+        return new TimeLimitingCollector(cancellable, TimeLimitingCollector.getGlobalCounter(), timeoutMillis);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        collector.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        checkCancelled();
+        collector.collect(doc);
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        checkCancelled();
+        collector.setNextReader(context);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return collector.acceptsDocsOutOfOrder();
+    }
+
+    private void checkCancelled() {
+        if (cancellation.cancelled()) throw new CancellationException("Search was cancelled");
+    }
+}
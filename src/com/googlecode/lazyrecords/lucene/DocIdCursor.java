@@ -0,0 +1,46 @@
+package com.googlecode.lazyrecords.lucene;
+
+import com.googlecode.lazyrecords.Cancellation;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pages through the matches of an unsorted search in doc id order. Each page advances the scorers straight past the
+ * last doc id of the previous page rather than collecting and discarding everything before it.
+ */
+public class DocIdCursor {
+    public static TopDocs page(IndexSearcher searcher, Query query, int after, int size, long timeoutMillis, Cancellation cancellation) throws IOException {
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : Long.MAX_VALUE;
+        Weight weight = searcher.createNormalizedWeight(query);
+        List<ScoreDoc> docs = new ArrayList<ScoreDoc>(Math.min(size, 1024));
+        for (AtomicReaderContext leaf : searcher.getIndexReader().leaves()) {
+            if (docs.size() >= size) break;
+            int first = after + 1 - leaf.docBase;
+            if (first >= leaf.reader().maxDoc()) continue;
+            Scorer scorer = weight.scorer(leaf, leaf.reader().getLiveDocs());
+            if (scorer == null) continue;
+            for (int doc = first > 0 ? scorer.advance(first) : scorer.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS && docs.size() < size; doc = scorer.nextDoc()) {
+                if ((docs.size() & 1023) == 0) check(deadline, timeoutMillis, cancellation);
+                docs.add(new ScoreDoc(leaf.docBase + doc, 0));
+            }
+        }
+        return new TopDocs(docs.size(), docs.toArray(new ScoreDoc[docs.size()]), 0);
+    }
+
+    private static void check(long deadline, long timeoutMillis, Cancellation cancellation) {
+        if (cancellation.cancelled()) throw new CancellationException("Search was cancelled");
+        if (System.nanoTime() > deadline) throw new CancellationException("Search took longer than " + timeoutMillis + "ms");
+    }
+}
@@ -1,5 +1,9 @@
 package com.googlecode.lazyrecords.lucene;
 
+import com.googlecode.lazyrecords.Definition;
+import com.googlecode.lazyrecords.lucene.mappings.LuceneMappings;
+import com.googlecode.totallylazy.Option;
+import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.functions.Callables;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.document.Document;
@@ -10,12 +14,29 @@ import org.apache.lucene.store.NIOFSDirectory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.function.UnaryOperator;
 
 import static com.googlecode.lazyrecords.lucene.PartitionedIndex.methods.indexWriter;
 import static com.googlecode.totallylazy.Sequences.one;
 
 public class IndexMigrator {
     public static void migrate(File old, File newStructure) throws IOException {
+        migrate(old, newStructure, UnaryOperator.<Document>identity());
+    }
+
+    /**
+     * Copies an index written before some keywords were marked sortable, adding the doc values those keywords need.
+     * Numeric sortable keywords cannot be sorted on an index without them, as their terms are lexical strings.
+     */
+    public static void migrate(File old, File newStructure, final LuceneMappings mappings, final Sequence<Definition> definitions) throws IOException {
+        migrate(old, newStructure, document -> {
+            String type = document.get(Lucene.RECORD_KEY.name());
+            Option<Definition> definition = definitions.find(candidate -> candidate.name().equalsIgnoreCase(type));
+            return definition.isEmpty() ? document : mappings.addDocValues(definition.get(), document);
+        });
+    }
+
+    private static void migrate(File old, File newStructure, UnaryOperator<Document> migration) throws IOException {
         final NIOFSDirectory oldDir = new NIOFSDirectory(old);
         final IndexWriter oldWriter = indexWriter(oldDir);
         final OptimisedStorage oldStorage = new OptimisedStorage(oldWriter);
@@ -28,7 +49,7 @@ public class IndexMigrator {
         Searcher oldSeacher = oldStorage.searcher();
         ScoreDoc[] docs = oldSeacher.search(Lucene.all(), Lucene.NO_SORT).scoreDocs;
         for (ScoreDoc doc : docs) {
-            Document document = oldSeacher.document(doc.doc);
+            Document document = migration.apply(oldSeacher.document(doc.doc));
             String type = document.get(Lucene.RECORD_KEY.name());
             partitionedIndex.partition(type).add(one(document));
         }
@@ -4,6 +4,7 @@ import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Named;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.lucene.mappings.LuceneMappings;
 import com.googlecode.lazyrecords.mappings.StringMappings;
 import com.googlecode.totallylazy.*;
 import com.googlecode.totallylazy.annotations.multimethod;
@@ -13,6 +14,8 @@ import com.googlecode.totallylazy.predicates.*;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 
+import java.util.Date;
+
 import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
 import static com.googlecode.totallylazy.Sequences.sequence;
 import static org.apache.lucene.search.BooleanClause.Occur.MUST;
@@ -77,9 +80,16 @@ public class Lucene {
     }
 
     private final StringMappings mappings;
+    private final boolean numericFields;
 
-    public Lucene(StringMappings mappings) {
+    /** With numericFields, numeric and date keywords are queried with NumericRangeQuery (see LuceneMappings) */
+    public Lucene(StringMappings mappings, boolean numericFields) {
         this.mappings = mappings;
+        this.numericFields = numericFields;
+    }
+
+    public Lucene(StringMappings mappings) {
+        this(mappings, false);
     }
 
     private multi queryP;
@@ -113,6 +123,7 @@ public class Lucene {
     @multimethod public Query query(Keyword<?> keyword, NullPredicate<?> predicate) { return nullValue(keyword); }
 
     private Query newRange(Keyword<?> keyword, Object lower, Object upper, boolean minInclusive, boolean maxInclusive) {
+        if (numeric(keyword)) return numericRange(keyword, lower, upper, minInclusive, maxInclusive);
         return TermRangeQuery.newStringRange(keyword.name(), lower == null ? null : mappings.toString(keyword.forClass(), lower), upper == null ? null : mappings.toString(keyword.forClass(), upper), minInclusive, maxInclusive);
     }
 
@@ -126,7 +137,26 @@ public class Lucene {
         return new MatchAllDocsQuery();
     }
 
+    private boolean numeric(Keyword<?> keyword) {
+        return numericFields && LuceneMappings.numeric(keyword.forClass());
+    }
+
+    private static Query numericRange(Keyword<?> keyword, Object lower, Object upper, boolean minInclusive, boolean maxInclusive) {
+        Class<?> aClass = keyword.forClass();
+        if (aClass.equals(Integer.class))
+            return NumericRangeQuery.newIntRange(keyword.name(), LuceneMappings.PRECISION_STEP, lower == null ? null : ((Number) lower).intValue(), upper == null ? null : ((Number) upper).intValue(), minInclusive, maxInclusive);
+        if (aClass.equals(Long.class) || Date.class.isAssignableFrom(aClass))
+            return NumericRangeQuery.newLongRange(keyword.name(), LuceneMappings.PRECISION_STEP, asLong(lower), asLong(upper), minInclusive, maxInclusive);
+        return NumericRangeQuery.newDoubleRange(keyword.name(), LuceneMappings.PRECISION_STEP, lower == null ? null : ((Number) lower).doubleValue(), upper == null ? null : ((Number) upper).doubleValue(), minInclusive, maxInclusive);
+    }
+
+    private static Long asLong(Object value) {
+        if (value == null) return null;
+        return value instanceof Date ? ((Date) value).getTime() : ((Number) value).longValue();
+    }
+
     private Query equalTo(Keyword<?> keyword, Object value) {
+        if (numeric(keyword)) return numericRange(keyword, value, value, true, true);
         return new TermQuery(new Term(keyword.name(), mappings.toString(keyword.forClass(), value)));
     }
 
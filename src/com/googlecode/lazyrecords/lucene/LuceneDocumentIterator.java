@@ -0,0 +1,152 @@
+package com.googlecode.lazyrecords.lucene;
+
+import com.googlecode.lazyrecords.Cancellation;
+import com.googlecode.lazyrecords.Logger;
+import com.googlecode.lazyrecords.Loggers;
+import com.googlecode.totallylazy.collections.CloseableList;
+import com.googlecode.totallylazy.Maps;
+import com.googlecode.totallylazy.iterators.StatefulIterator;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.store.AlreadyClosedException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import static com.googlecode.totallylazy.Closeables.safeClose;
+import static com.googlecode.totallylazy.Pair.pair;
+import static com.googlecode.totallylazy.functions.Time0.calculateMilliseconds;
+
+/**
+ * Reads the hits in windows of pageSize, continuing each window after the last hit of the previous one
+ * (searchAfter for a sorted search, a doc id cursor otherwise) so only one window of hits is held at a time.
+ * The searcher is held for the whole iteration so the windows see the same point in time.
+ */
+public class LuceneDocumentIterator extends StatefulIterator<Document> implements Closeable {
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    private final LuceneStorage storage;
+    private final Query query;
+    private final Sort sort;
+    private final CloseableList closeables;
+    private final Logger logger;
+    private final long timeoutMillis;
+    private final Cancellation cancellation;
+    private final int start;
+    private final int end;
+    private final int pageSize;
+    private final Set<String> fields;
+    private ScoreDoc[] page;
+    private int pageIndex;
+    private int position;
+    private int fetched;
+    private ScoreDoc last;
+    private Searcher searcher;
+    private boolean closed = false;
+
+    public LuceneDocumentIterator(LuceneStorage storage, Query query, Sort sort, int start, int end, CloseableList closeables, Logger logger) {
+        this(storage, query, sort, start, end, closeables, logger, 0, Cancellation.cancellation());
+    }
+
+    /** A timeout other than 0 limits how many milliseconds the search may spend collecting hits */
+    public LuceneDocumentIterator(LuceneStorage storage, Query query, Sort sort, int start, int end, CloseableList closeables, Logger logger, long timeoutMillis, Cancellation cancellation) {
+        this(storage, query, sort, start, end, closeables, logger, timeoutMillis, cancellation, DEFAULT_PAGE_SIZE);
+    }
+
+    public LuceneDocumentIterator(LuceneStorage storage, Query query, Sort sort, int start, int end, CloseableList closeables, Logger logger, long timeoutMillis, Cancellation cancellation, int pageSize) {
+        this(storage, query, sort, start, end, closeables, logger, timeoutMillis, cancellation, pageSize, null);
+    }
+
+    /** Only the named stored fields are read from each document when fields is not null */
+    public LuceneDocumentIterator(LuceneStorage storage, Query query, Sort sort, int start, int end, CloseableList closeables, Logger logger, long timeoutMillis, Cancellation cancellation, int pageSize, Set<String> fields) {
+        this.storage = storage;
+        this.query = query;
+        this.sort = sort;
+        this.start = start;
+        this.end = end;
+        this.closeables = closeables;
+        this.logger = logger;
+        this.timeoutMillis = timeoutMillis;
+        this.cancellation = cancellation;
+        this.pageSize = Math.max(1, pageSize);
+        this.fields = fields;
+    }
+
+    @Override
+    protected Document getNext() throws Exception {
+        if (cancellation.cancelled()) {
+            release();
+            throw new CancellationException("Search was cancelled");
+        }
+        ScoreDoc next = nextScoreDoc();
+        while (next != null && position < start) {
+            position++;
+            next = nextScoreDoc();
+        }
+        if (next == null) {
+            release();
+            return finished();
+        }
+        return fields == null ? searcher().document(next.doc) : searcher().document(next.doc, fields);
+    }
+
+    private ScoreDoc nextScoreDoc() throws IOException {
+        if (page == null || (pageIndex == page.length && page.length > 0 && fetched < end)) {
+            int size = Math.min(pageSize, end - fetched);
+            if (size <= 0) return null;
+            page = search(size);
+            pageIndex = 0;
+            fetched += page.length;
+            if (page.length < size) fetched = end;
+        }
+        if (pageIndex >= page.length) return null;
+        return last = page[pageIndex++];
+    }
+
+    private ScoreDoc[] search(int size) throws IOException {
+        Map<String,Object> log = Maps.<String, Object>map(pair(Loggers.TYPE, Loggers.LUCENE), pair(Loggers.EXPRESSION, query));
+        long start = System.nanoTime();
+        try {
+            ScoreDoc[] result = searcher().searchAfter(last, query, sort, size, timeoutMillis, cancellation).scoreDocs;
+            log.put(Loggers.ROWS, result.length);
+            return result;
+        } catch (RuntimeException e) {
+            // timed out or cancelled, so give the searcher back straight away
+            release();
+            throw e;
+        } finally {
+            log.put(Loggers.MILLISECONDS, calculateMilliseconds(start, System.nanoTime()));
+            logger.log(log);
+        }
+    }
+
+    private Searcher searcher() throws IOException {
+        if(closed){
+            throw new AlreadyClosedException("This iterator has already been closed");
+        }
+
+        if( searcher == null){
+            closeables.manage(this);
+            searcher = storage.searcher();
+        }
+        return searcher;
+    }
+
+    private void release() throws IOException {
+        close();
+        closeables.remove(this);
+    }
+
+    @Override
+    public void close() throws IOException {
+        safeClose(searcher);
+        searcher = null;
+        page = null;
+        last = null;
+        closed = true;
+    }
+}
@@ -41,7 +41,7 @@ public class LuceneFacetedRecords implements FacetedRecords {
         this.facetedLuceneStorage = facetedLuceneStorage;
         this.facetsConfig = facetedLuceneStorage.facetsConfig();
         this.stringMappings = luceneMappings.stringMappings();
-        this.lucene = new Lucene(luceneMappings.stringMappings());
+        this.lucene = new Lucene(luceneMappings.stringMappings(), luceneMappings.numericFields());
         this.luceneQueryPreprocessor = luceneQueryPreprocessor;
     }
 
@@ -16,6 +16,10 @@ public class LucenePool implements SearcherPool {
         this.manager = createSearchManagerLazily(writer);
     }
 
+    public LucenePool(final SearcherManager manager) {
+        this.manager = ((Function0<SearcherManager>) () -> manager).lazy();
+    }
+
     @Override
     public Searcher searcher() throws IOException {
         return new ManagedSearcher(manager());
@@ -1,12 +1,15 @@
 package com.googlecode.lazyrecords.lucene;
 
 import com.googlecode.lazyrecords.AbstractRecords;
+import com.googlecode.lazyrecords.Cancellation;
 import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.IgnoreLogger;
 import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Logger;
 import com.googlecode.lazyrecords.Queryable;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.RecordBatch;
+import com.googlecode.lazyrecords.RecordLayout;
 import com.googlecode.lazyrecords.lucene.mappings.LuceneMappings;
 import com.googlecode.totallylazy.collections.CloseableList;
 import com.googlecode.totallylazy.functions.Function1;
@@ -14,10 +17,12 @@ import com.googlecode.totallylazy.LazyException;
 import com.googlecode.totallylazy.Pair;
 import com.googlecode.totallylazy.predicates.Predicate;
 import com.googlecode.totallylazy.Sequence;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Query;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.concurrent.Callable;
 
 import static com.googlecode.lazyrecords.Record.functions.merge;
@@ -33,6 +38,7 @@ public class LuceneRecords extends AbstractRecords implements Queryable<Query>,
     private final LuceneQueryPreprocessor preprocessor;
     private final Lucene lucene;
     private final CloseableList closeables;
+    private final long timeoutMillis;
 
     public LuceneRecords(final LuceneStorage storage) throws IOException {
         this(storage, new LuceneMappings(), new IgnoreLogger());
@@ -43,22 +49,39 @@ public class LuceneRecords extends AbstractRecords implements Queryable<Query>,
     }
 
     public LuceneRecords(final LuceneStorage storage, final LuceneMappings mappings, final Logger logger, final LuceneQueryPreprocessor preprocessor) throws IOException {
+        this(storage, mappings, logger, preprocessor, 0);
+    }
+
+    /** timeoutMillis is the default time a search may spend collecting hits (0 for no limit) */
+    public LuceneRecords(final LuceneStorage storage, final LuceneMappings mappings, final Logger logger, final LuceneQueryPreprocessor preprocessor, final long timeoutMillis) throws IOException {
         this.storage = new PreprocessedLuceneStorage(storage, preprocessor);
         this.mappings = mappings;
         this.logger = logger;
         this.preprocessor = preprocessor;
-        this.lucene = new Lucene(mappings.stringMappings());
+        this.lucene = new Lucene(mappings.stringMappings(), mappings.numericFields());
         this.closeables = CloseableList.constructors.closeableList();
+        this.timeoutMillis = Math.max(0, timeoutMillis);
     }
 
     public Sequence<Record> query(final Query query, final Sequence<Keyword<?>> definitions) {
-        return LuceneSequence.luceneSequence(lucene, storage, query, preprocessor, mappings.asRecord(definitions), logger, closeables);
+        return LuceneSequence.luceneSequence(lucene, storage, query, preprocessor, mappings.asRecord(definitions), logger, closeables, Lucene.NO_SORT, 0, Integer.MAX_VALUE, timeoutMillis, Cancellation.cancellation(), Sorting.sorting(definitions, mappings.numericFields()));
     }
 
     public Sequence<Record> get(final Definition definition) {
         return query(record(definition), definition.fields());
     }
 
+    @Override
+    public Sequence<RecordBatch> batches(final Definition definition, final int batchSize) {
+        final RecordLayout layout = RecordLayout.layout(definition);
+        return RecordBatch.methods.batches(new Iterable<Document>() {
+            @Override
+            public Iterator<Document> iterator() {
+                return new LuceneDocumentIterator(storage, new LuceneQueryVisitor(preprocessor).visit(record(definition)), Lucene.NO_SORT, 0, Integer.MAX_VALUE, closeables, logger, timeoutMillis, Cancellation.cancellation(), batchSize);
+            }
+        }, layout, batchSize, mappings.intoBatch(layout));
+    }
+
     private Sequence<Record> getAll(final Definition definition) {
         return LuceneSequence.luceneSequence(lucene, storage, record(definition), preprocessor, mappings.asUnfilteredRecord(definition.fields()), logger, closeables);
     }
@@ -76,11 +99,15 @@ public class LuceneRecords extends AbstractRecords implements Queryable<Query>,
     }
 
     private Number internalRemove(Definition definition, Predicate<? super Record> predicate) throws IOException {
+        storage.refresh();
         return storage.delete(query(definition, predicate));
     }
 
     public Number remove(final Definition definition) {
-        return process(() -> storage.delete(record(definition)));
+        return process(() -> {
+            storage.refresh();
+            return storage.delete(record(definition));
+        });
     }
 
     @Override
@@ -91,6 +118,7 @@ public class LuceneRecords extends AbstractRecords implements Queryable<Query>,
     private Function1<Pair<? extends Predicate<? super Record>, Record>, Number> update(final Definition definition) {
         return pair -> {
             Predicate<? super Record> predicate = pair.first();
+            storage.refresh();
             Sequence<Record> matched = getAll(definition).filter(predicate).realise();
             Record updatedFields = Record.methods.filter(pair.second(), definition.fields());
             if (matched.isEmpty()) {
@@ -1,10 +1,16 @@
 package com.googlecode.lazyrecords.lucene;
 
+import com.googlecode.lazyrecords.Cancellation;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.search.*;
 
 import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
 
+import static com.googlecode.lazyrecords.lucene.CancellableCollector.limited;
 import static com.googlecode.totallylazy.Closeables.safeClose;
 
 public class LuceneSearcher implements Searcher {
@@ -31,11 +37,36 @@ public class LuceneSearcher implements Searcher {
         return results.topDocs();
     }
 
+    @Override
+    public TopDocs searchAfter(ScoreDoc after, Query query, Sort sort, int size, long timeoutMillis, Cancellation cancellation) throws IOException {
+        if (!sortSpecified(sort)) return DocIdCursor.page(searcher, query, after == null ? -1 : after.doc, size, timeoutMillis, cancellation);
+        TopFieldCollector results = TopFieldCollector.create(sort, hits(size), (FieldDoc) after, true, false, false, false);
+        searcher.search(query, limited(results, timeoutMillis, cancellation));
+        return results.topDocs();
+    }
+
+    // The collector allocates a queue of this size up front, so never ask for more hits than there are documents
+    private int hits(int end) {
+        return Math.max(1, Math.min(end, searcher.getIndexReader().maxDoc()));
+    }
+
     @Override
     public Document document(int id) throws IOException {
         return searcher.doc(id);
     }
 
+    @Override
+    public Document document(int id, final Set<String> fields) throws IOException {
+        DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor() {
+            @Override
+            public Status needsField(FieldInfo fieldInfo) throws IOException {
+                return fields.contains(fieldInfo.name.toLowerCase(Locale.ROOT)) ? Status.YES : Status.NO;
+            }
+        };
+        searcher.doc(id, visitor);
+        return visitor.getDocument();
+    }
+
     @Override
     public int count(Query query) throws IOException {
         TotalHitCountCollector results = new TotalHitCountCollector();
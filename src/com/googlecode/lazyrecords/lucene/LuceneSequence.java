@@ -1,12 +1,20 @@
 package com.googlecode.lazyrecords.lucene;
 
+import com.googlecode.lazyrecords.Aliased;
+import com.googlecode.lazyrecords.Cancellation;
+import com.googlecode.lazyrecords.ClientComputation;
+import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Logger;
+import com.googlecode.lazyrecords.Loggers;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.SelectFunction;
+import com.googlecode.lazyrecords.SortedSequence;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.collections.CloseableList;
 import com.googlecode.totallylazy.Computation;
 import com.googlecode.totallylazy.functions.Lazy;
 import com.googlecode.totallylazy.LazyException;
+import com.googlecode.totallylazy.Maps;
 import com.googlecode.totallylazy.predicates.Predicate;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.Sequences;
@@ -18,8 +26,11 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
 
 import static com.googlecode.lazyrecords.lucene.Lucene.and;
+import static com.googlecode.totallylazy.Pair.pair;
 
 public class LuceneSequence extends Sequence<Record> {
     private final LuceneStorage storage;
@@ -33,10 +44,14 @@ public class LuceneSequence extends Sequence<Record> {
     private final Lazy<Iterable<Record>> data;
     private final int start;
     private final int end;
+    private final long timeoutMillis;
+    private final Cancellation cancellation;
+    private final Set<String> fields;
+    private final Sorting sorting;
 
     private LuceneSequence(final Lucene lucene, final LuceneStorage storage, final Query query,
                            final LuceneQueryPreprocessor luceneQueryPreprocessor, final Function1<? super Document, Record> documentToRecord, final Logger logger,
-                           final CloseableList<Closeable> closeables, final Sort sort, final int start, final int end) {
+                           final CloseableList<Closeable> closeables, final Sort sort, final int start, final int end, final long timeoutMillis, final Cancellation cancellation, final Set<String> fields, final Sorting sorting) {
         this.lucene = lucene;
         this.storage = storage;
         this.query = query;
@@ -47,30 +62,91 @@ public class LuceneSequence extends Sequence<Record> {
         this.sort = sort;
         this.start = start;
         this.end = end;
+        this.timeoutMillis = timeoutMillis;
+        this.cancellation = cancellation;
+        this.fields = fields;
+        this.sorting = sorting;
         this.data = new Lazy<Iterable<Record>>() {
             @Override
             protected Iterable<Record> get() throws Exception {
-                return Computation.memorise(new LuceneIterator(storage, new LuceneQueryVisitor(luceneQueryPreprocessor).visit(query), sort, documentToRecord, start, end, closeables, logger));
+                return Computation.memorise(new LuceneIterator(storage, new LuceneQueryVisitor(luceneQueryPreprocessor).visit(query), sort, documentToRecord, start, end, closeables, logger, timeoutMillis, cancellation, LuceneDocumentIterator.DEFAULT_PAGE_SIZE, fields));
             }
         };
     }
 
     public static Sequence<Record> luceneSequence(final Lucene lucene, final LuceneStorage storage, final Query query, LuceneQueryPreprocessor luceneQueryPreprocessor, final Function1<? super Document, Record> documentToRecord, final Logger logger, CloseableList closeables) {
-        return new LuceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, Lucene.NO_SORT, 0, Integer.MAX_VALUE);
+        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, Lucene.NO_SORT, 0, Integer.MAX_VALUE);
     }
 
     public static Sequence<Record> luceneSequence(final Lucene lucene, final LuceneStorage storage, final Query query, LuceneQueryPreprocessor luceneQueryPreprocessor, final Function1<? super Document, Record> documentToRecord, final Logger logger, final CloseableList closeables, final Sort sort, final int start, final int end) {
+        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end, 0, Cancellation.cancellation());
+    }
+
+    /** A timeout other than 0 stops each search after that many milliseconds; the cancellation is shared with every sequence derived from this one */
+    public static Sequence<Record> luceneSequence(final Lucene lucene, final LuceneStorage storage, final Query query, LuceneQueryPreprocessor luceneQueryPreprocessor, final Function1<? super Document, Record> documentToRecord, final Logger logger, final CloseableList closeables, final Sort sort, final int start, final int end, final long timeoutMillis, final Cancellation cancellation) {
+        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end, timeoutMillis, cancellation, Sorting.sorting());
+    }
+
+    /** Sorts are resolved through the given sorting, so keywords sort the way the definition wrote them */
+    public static Sequence<Record> luceneSequence(final Lucene lucene, final LuceneStorage storage, final Query query, LuceneQueryPreprocessor luceneQueryPreprocessor, final Function1<? super Document, Record> documentToRecord, final Logger logger, final CloseableList closeables, final Sort sort, final int start, final int end, final long timeoutMillis, final Cancellation cancellation, final Sorting sorting) {
         if(end <= start) return Sequences.empty();
-        return new LuceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end);
+        return new LuceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end, timeoutMillis, cancellation, null, sorting);
     }
 
     public Iterator<Record> iterator() {
         return data.value().iterator();
     }
 
+    /** This search as a sequence that does not memorise its records; each iteration searches again and releases the searcher once exhausted or closed */
+    public Sequence<Record> stream() {
+        return stream(LuceneDocumentIterator.DEFAULT_PAGE_SIZE);
+    }
+
+    /** Streams the hits in windows of pageSize, so iterating the whole index only ever holds one window of hits */
+    public Sequence<Record> stream(final int pageSize) {
+        return Sequences.sequence(new Iterable<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                return new LuceneIterator(storage, new LuceneQueryVisitor(luceneQueryPreprocessor).visit(query), sort, documentToRecord, start, end, closeables, logger, timeoutMillis, cancellation, pageSize, fields);
+            }
+        });
+    }
+
+    /** The same search, stopped once it has spent the given number of milliseconds collecting hits */
+    public Sequence<Record> timeout(long millis) {
+        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end, millis, cancellation, sorting);
+    }
+
+    /** The same search, cancelled along with everything else registered with the given cancellation */
+    public Sequence<Record> cancellation(Cancellation cancellation) {
+        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end, timeoutMillis, cancellation, sorting);
+    }
+
+    /** Stops the running searches of this sequence so the CPU is freed for requests that still want their results */
+    public void cancel() {
+        cancellation.cancel();
+    }
+
+    /** Keywords and selects only load their own stored fields rather than decoding the whole document */
+    @Override
+    public <S> Sequence<S> map(Function1<? super Record, ? extends S> callable) {
+        if (fields != null || callable instanceof ClientComputation) return super.map(callable);
+        Function1 raw = (Function1) callable;
+        Sequence<Keyword<?>> keywords = raw instanceof Keyword ? Sequences.<Keyword<?>>one((Keyword<?>) raw)
+                : raw instanceof SelectFunction ? ((SelectFunction) raw).keywords() : null;
+        // Aliased and composite keywords read other fields than their name, so those load the whole document
+        if (keywords == null || keywords.exists(keyword -> keyword instanceof Aliased)) return super.map(callable);
+        return project(keywords).map(callable);
+    }
+
+    private LuceneSequence project(Sequence<Keyword<?>> keywords) {
+        Set<String> names = keywords.map(keyword -> keyword.name().toLowerCase(Locale.ROOT)).toSet();
+        return new LuceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end, timeoutMillis, cancellation, names, sorting);
+    }
+
     @Override
     public Sequence<Record> filter(Predicate<? super Record> predicate) {
-        return luceneSequence(lucene, storage, and(query, lucene.query(predicate)), luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end);
+        return luceneSequence(lucene, storage, and(query, lucene.query(predicate)), luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, end, timeoutMillis, cancellation, sorting);
     }
 
     @Override
@@ -84,16 +160,21 @@ public class LuceneSequence extends Sequence<Record> {
 
     @Override
     public Sequence<Record> sortBy(Comparator<? super Record> comparator) {
-        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, Sorting.sort(comparator), start, end);
+        try {
+            return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sorting.toSort(comparator), start, end, timeoutMillis, cancellation, sorting);
+        } catch (UnsupportedOperationException e) {
+            logger.log(Maps.map(pair(Loggers.TYPE, Loggers.LUCENE), pair(Loggers.MESSAGE, "Unsupported comparator passed to 'sortBy', moving computation to client"), pair(Loggers.COMPARATOR, comparator)));
+            return SortedSequence.sortedSequence(this, comparator);
+        }
     }
 
     @Override
     public Sequence<Record> drop(int count) {
-        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start + count, end);
+        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start + count, end, timeoutMillis, cancellation, sorting);
     }
 
     @Override
     public Sequence<Record> take(int count) {
-        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, start + count);
+        return luceneSequence(lucene, storage, query, luceneQueryPreprocessor, documentToRecord, logger, closeables, sort, start, start + count, timeoutMillis, cancellation, sorting);
     }
 }
@@ -23,6 +23,10 @@ public interface LuceneStorage extends Closeable, Flushable, Persistence {
 
     Searcher searcher() throws IOException;
 
+    /** Makes every write made so far visible to the searchers opened after this returns */
+    default void refresh() throws IOException {
+    }
+
     CheckIndex.Status check() throws IOException;
 
     void fix() throws IOException;
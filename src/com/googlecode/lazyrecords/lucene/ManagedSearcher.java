@@ -1,12 +1,15 @@
 package com.googlecode.lazyrecords.lucene;
 
+import com.googlecode.lazyrecords.Cancellation;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 
 import java.io.IOException;
+import java.util.Set;
 
 public class ManagedSearcher implements Searcher {
     private final SearcherManager manager;
@@ -27,11 +30,21 @@ public class ManagedSearcher implements Searcher {
         return searcher.search(query, sort, end);
     }
 
+    @Override
+    public TopDocs searchAfter(ScoreDoc after, Query query, Sort sort, int size, long timeoutMillis, Cancellation cancellation) throws IOException {
+        return searcher.searchAfter(after, query, sort, size, timeoutMillis, cancellation);
+    }
+
     @Override
     public Document document(int id) throws IOException {
         return searcher.document(id);
     }
 
+    @Override
+    public Document document(int id, Set<String> fields) throws IOException {
+        return searcher.document(id, fields);
+    }
+
     @Override
     public int count(Query query) throws IOException {
         return searcher.count(query);
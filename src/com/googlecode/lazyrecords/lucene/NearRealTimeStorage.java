@@ -0,0 +1,161 @@
+package com.googlecode.lazyrecords.lucene;
+
+import com.googlecode.totallylazy.Sequence;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage for high write rates. Writes become searchable through a background reopen thread within targetMaxStaleSec
+ * instead of committing on every flush; durable commits happen every commitIntervalMillis or once commitEvery writes
+ * are pending, whichever comes first.
+ * Use {@link #awaitVisible()} to read your own writes and {@link #awaitCommit(long, TimeUnit)} (or {@link #commit()})
+ * when a write has to survive a crash.
+ */
+public class NearRealTimeStorage extends OptimisedStorage {
+    private final Object commitLock = new Object();
+    private final TrackingIndexWriter tracking;
+    private final ControlledRealTimeReopenThread<IndexSearcher> reopener;
+    private final ScheduledExecutorService committer;
+    private final int commitEvery;
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean commitQueued = new AtomicBoolean();
+    private volatile long committed;
+    private volatile IOException failure;
+
+    private NearRealTimeStorage(IndexWriter writer, SearcherManager manager, double targetMaxStaleSec, long commitIntervalMillis, int commitEvery) {
+        super(writer, new LucenePool(manager));
+        this.tracking = new TrackingIndexWriter(writer);
+        this.commitEvery = Math.max(1, commitEvery);
+        this.reopener = new ControlledRealTimeReopenThread<IndexSearcher>(tracking, manager, targetMaxStaleSec, Math.min(0.025, targetMaxStaleSec));
+        reopener.setName("lazyrecords-nrt-reopen");
+        reopener.setDaemon(true);
+        reopener.start();
+        this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lazyrecords-nrt-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commitQuietly, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static NearRealTimeStorage nearRealTimeStorage(IndexWriter writer, double targetMaxStaleSec, long commitIntervalMillis, int commitEvery) throws IOException {
+        return new NearRealTimeStorage(writer, new SearcherManager(writer, true, null), targetMaxStaleSec, commitIntervalMillis, commitEvery);
+    }
+
+    public static NearRealTimeStorage nearRealTimeStorage(IndexWriter writer) throws IOException {
+        return nearRealTimeStorage(writer, 1.0, 5000, 10000);
+    }
+
+    @Override
+    public Number add(Sequence<Document> documents) throws IOException {
+        List<Document> docs = documents.toList();
+        written(tracking.addDocuments(docs));
+        return docs.size();
+    }
+
+    @Override
+    public void deleteNoCount(Query query) throws IOException {
+        written(tracking.deleteDocuments(query));
+    }
+
+    @Override
+    public void deleteAll() throws IOException {
+        written(tracking.deleteAll());
+        flush();
+    }
+
+    private void written(long generation) {
+        this.generation.accumulateAndGet(generation, Math::max);
+        writes.incrementAndGet();
+    }
+
+    /** Does not commit: queues a single commit once enough writes are pending and reports a failed background commit */
+    @Override
+    public void flush() throws IOException {
+        IOException failed = failure;
+        if (failed != null) {
+            failure = null;
+            throw failed;
+        }
+        if (writes.get() - committed >= commitEvery && commitQueued.compareAndSet(false, true)) committer.execute(this::commitQuietly);
+    }
+
+    /** Commits everything written so far and refreshes the searchers */
+    public void commit() throws IOException {
+        synchronized (commitLock) {
+            long target = writes.get();
+            if (target == committed) return;
+            super.flush();
+            committed = target;
+            commitLock.notifyAll();
+        }
+    }
+
+    /** Waits for a commit that includes every write made before this call, returning false on timeout */
+    public boolean awaitCommit(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = writes.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (commitLock) {
+            while (committed < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(commitLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /** Waits until every write made before this call is visible to new searchers */
+    public void awaitVisible() throws InterruptedException {
+        reopener.waitForGeneration(generation.get());
+    }
+
+    /** Waits for the background reopen, so a read-modify-write (put and remove in LuceneRecords) sees its own earlier writes */
+    @Override
+    public void refresh() throws IOException {
+        try {
+            awaitVisible();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for writes to become visible");
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        } finally {
+            commitQueued.set(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        committer.shutdownNow();
+        reopener.close();
+        try {
+            commit();
+        } finally {
+            super.close();
+        }
+    }
+}
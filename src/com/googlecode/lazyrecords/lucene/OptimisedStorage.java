@@ -28,8 +28,12 @@ public class OptimisedStorage implements LuceneStorage {
     private IndexWriter writer;
 
     public OptimisedStorage(IndexWriter indexWriter) {
-        writer = indexWriter;
-        pool = new LucenePool(indexWriter);
+        this(indexWriter, new LucenePool(indexWriter));
+    }
+
+    protected OptimisedStorage(IndexWriter indexWriter, SearcherPool pool) {
+        this.writer = indexWriter;
+        this.pool = pool;
     }
 
     @Override
@@ -1,19 +1,28 @@
 package com.googlecode.lazyrecords.lucene;
 
+import com.googlecode.lazyrecords.Cancellation;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Set;
 
 public interface Searcher extends Closeable{
     TopDocs search(Query query, Sort sort) throws IOException;
 
     TopDocs search(Query query, Sort sort, int end) throws IOException;
 
+    /** The next size hits after the given one (null for the first page), in sort order or else in doc id order */
+    TopDocs searchAfter(ScoreDoc after, Query query, Sort sort, int size, long timeoutMillis, Cancellation cancellation) throws IOException;
+
     Document document(int id) throws IOException;
 
+    /** Reads only the stored fields named in fields (lower cased, as keywords match names regardless of case) */
+    Document document(int id, Set<String> fields) throws IOException;
+
     int count(Query query) throws IOException;
 }
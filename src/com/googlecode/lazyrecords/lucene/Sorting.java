@@ -1,38 +1,85 @@
 package com.googlecode.lazyrecords.lucene;
 
+import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Keywords;
 import com.googlecode.lazyrecords.Named;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.lucene.mappings.LuceneMappings;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Sequences;
 import com.googlecode.totallylazy.annotations.multimethod;
 import com.googlecode.totallylazy.comparators.AscendingComparator;
 import com.googlecode.totallylazy.comparators.CompositeComparator;
 import com.googlecode.totallylazy.comparators.DescendingComparator;
 import com.googlecode.totallylazy.multi;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 
 import java.util.Comparator;
+import java.util.Date;
 
 import static com.googlecode.totallylazy.Sequences.sequence;
 
+/**
+ * Turns comparators into Lucene sorts. The definitions say which keywords were written with doc values and
+ * numericFields whether numbers and dates were indexed as numeric fields (see LuceneMappings).
+ */
 public class Sorting {
-    private static multi multi;
+    private final Sequence<Keyword<?>> definitions;
+    private final boolean numericFields;
+
+    private Sorting(Sequence<Keyword<?>> definitions, boolean numericFields) {
+        this.definitions = definitions;
+        this.numericFields = numericFields;
+    }
+
+    public static Sorting sorting(Sequence<Keyword<?>> definitions, boolean numericFields) {
+        return new Sorting(definitions, numericFields);
+    }
+
+    public static Sorting sorting(Sequence<Keyword<?>> definitions) {
+        return sorting(definitions, false);
+    }
+
+    public static Sorting sorting() {
+        return sorting(Sequences.<Keyword<?>>empty());
+    }
+
+    /** Without definitions only the comparator's own keyword says whether it is sortable; use {@link #toSort(Comparator)} on a sorting built from the definitions */
     public static Sort sort(Comparator<? super Record> comparator) {
+        return sorting().toSort(comparator);
+    }
+
+    public static Sort sort(AscendingComparator<? super Record, ?> comparator) {
+        return sorting().toSort(comparator);
+    }
+
+    public static Sort sort(DescendingComparator<? super Record, ?> comparator) {
+        return sorting().toSort(comparator);
+    }
+
+    public static Sort sort(CompositeComparator<? super Record> comparator) {
+        return sorting().toSort(comparator);
+    }
+
+    private multi multi;
+    public Sort toSort(Comparator<? super Record> comparator) {
         if(multi == null) multi = new multi(){};
         return multi.<Sort>methodOption(comparator).getOrThrow(new UnsupportedOperationException("Unsupported comparator " + comparator));
     }
 
-    @multimethod public static Sort sort(AscendingComparator<? super Record, ?> comparator) {
-        return sortBy(name(comparator.callable()), false);
+    @multimethod public Sort toSort(AscendingComparator<? super Record, ?> comparator) {
+        return sortBy(comparator.callable(), false);
     }
 
-    @multimethod public static Sort sort(DescendingComparator<? super Record, ?> comparator) {
-        return sortBy(name(comparator.callable()), true);
+    @multimethod public Sort toSort(DescendingComparator<? super Record, ?> comparator) {
+        return sortBy(comparator.callable(), true);
     }
 
-    @multimethod public static Sort sort(CompositeComparator<? super Record> comparator) {
-        Sequence<SortField> sortFields = comparator.comparators().map(sort()).flatMap(sortFields());
+    @multimethod public Sort toSort(CompositeComparator<? super Record> comparator) {
+        Sequence<SortField> sortFields = comparator.comparators().map(toSort()).flatMap(sortFields());
         return new Sort(sortFields.toArray(SortField.class));
     }
 
@@ -40,12 +87,30 @@ public class Sorting {
         return sort -> sequence(sort.getSort());
     }
 
-    private static Function1<Comparator<? super Record>, Sort> sort() {
-        return Sorting::sort;
+    private Function1<Comparator<? super Record>, Sort> toSort() {
+        return this::toSort;
+    }
+
+    private Sort sortBy(Function1<?, ?> callable, boolean reverse) {
+        return new Sort(sortField(name(callable), callable, reverse));
+    }
+
+    // Sortable keywords are written with doc values (see LuceneMappings.asDocValuesField) so numbers can sort as numbers.
+    // The metadata is read from the definition's keyword as the comparator's keyword may have been created without it.
+    private SortField sortField(String name, Function1<?, ?> callable, boolean reverse) {
+        if (!(callable instanceof Keyword)) return new SortField(name, SortField.Type.STRING, reverse);
+        final Keyword<?> comparing = (Keyword<?>) callable;
+        Keyword<?> keyword = definitions.find(definition -> definition.equals(comparing)).getOrElse(comparing);
+        if (keyword.metadata(Keywords.sortable).getOrElse(false)) return new SortField(name, LuceneMappings.sortType(keyword.forClass()), reverse);
+        // Numeric fields also index lower precision terms, so only the full precision ones may be read into the FieldCache
+        if (numericFields && LuceneMappings.numeric(keyword.forClass())) return new SortField(name, parser(keyword.forClass()), reverse);
+        return new SortField(name, SortField.Type.STRING, reverse);
     }
 
-    private static Sort sortBy(String name, boolean reverse) {
-        return new Sort(new SortField(name, SortField.Type.STRING, reverse));
+    private static FieldCache.Parser parser(Class<?> aClass) {
+        if (aClass.equals(Integer.class)) return FieldCache.NUMERIC_UTILS_INT_PARSER;
+        if (aClass.equals(Long.class) || Date.class.isAssignableFrom(aClass)) return FieldCache.NUMERIC_UTILS_LONG_PARSER;
+        return FieldCache.NUMERIC_UTILS_DOUBLE_PARSER;
     }
 
     private static String name(Function1<?, ?> callable) {
@@ -39,6 +39,9 @@ public abstract class DelegatingStorage implements LuceneStorage {
     @Override
     public Searcher searcher() throws IOException {return storage.searcher();}
 
+    @Override
+    public void refresh() throws IOException {storage.refresh();}
+
     @Override
     public CheckIndex.Status check() throws IOException { return storage.check(); }
 
@@ -2,37 +2,59 @@ package com.googlecode.lazyrecords.lucene.mappings;
 
 import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Keywords;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.RecordBatch;
+import com.googlecode.lazyrecords.RecordLayout;
 import com.googlecode.lazyrecords.RecordTo;
 import com.googlecode.lazyrecords.SourceRecord;
 import com.googlecode.lazyrecords.ToRecord;
 import com.googlecode.lazyrecords.lucene.Lucene;
 import com.googlecode.lazyrecords.mappings.StringMappings;
-import com.googlecode.totallylazy.functions.Callables;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.functions.Curried2;
 import com.googlecode.totallylazy.Pair;
-import com.googlecode.totallylazy.predicates.Predicates;
 import com.googlecode.totallylazy.Sequence;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 import static com.googlecode.lazyrecords.Definition.methods.sortFields;
 import static com.googlecode.lazyrecords.Record.functions.updateValues;
-import static com.googlecode.totallylazy.predicates.Predicates.in;
-import static com.googlecode.totallylazy.predicates.Predicates.is;
 import static com.googlecode.totallylazy.predicates.Predicates.notNullValue;
-import static com.googlecode.totallylazy.predicates.Predicates.where;
 import static com.googlecode.totallylazy.Sequences.sequence;
 
 public class LuceneMappings {
+    public static final int PRECISION_STEP = 8;
     private final StringMappings stringMappings;
+    private final boolean numericFields;
 
-    public LuceneMappings(StringMappings stringMappings) {
+    /**
+     * With numericFields, Integer, Long, Date, Double and Float keywords are indexed as trie encoded numeric fields
+     * (queried with NumericRangeQuery) instead of lexical strings. An index has to be written in one mode or the other,
+     * as the terms are not compatible. BigDecimal stays lexical in both modes so no digits are lost to a double.
+     */
+    public LuceneMappings(StringMappings stringMappings, boolean numericFields) {
         this.stringMappings = stringMappings;
+        this.numericFields = numericFields;
+    }
+
+    public LuceneMappings(StringMappings stringMappings) {
+        this(stringMappings, false);
     }
 
     public LuceneMappings() {
@@ -43,34 +65,64 @@ public class LuceneMappings {
         return stringMappings;
     }
 
+    public boolean numericFields() {
+        return numericFields;
+    }
+
     public ToRecord<Document> asRecord(final Sequence<Keyword<?>> definitions) {
+        return asRecord(definitions, false);
+    }
+
+    public ToRecord<Document> asUnfilteredRecord(final Sequence<Keyword<?>> definitions) {
+        return asRecord(definitions, true);
+    }
+
+    private ToRecord<Document> asRecord(final Sequence<Keyword<?>> definitions, final boolean keepUnknownFields) {
+        final RecordLayout layout = RecordLayout.layout(definitions);
         return new ToRecord<Document>() {
             public Record call(Document document) throws Exception {
-                return sequence(document.getFields()).
-                        map(asPair(definitions)).
-                        filter(where(Callables.<Keyword<?>>first(), is(Predicates.<Keyword<?>>not(Lucene.RECORD_KEY)).and(in(definitions)))).
-                        fold(SourceRecord.record(document), updateValues());
+                Object[] values = new Object[layout.size()];
+                List<Pair<Keyword<?>, Object>> unknownFields = new ArrayList<Pair<Keyword<?>, Object>>();
+                for (IndexableField field : document.getFields()) {
+                    Keyword<?> keyword = layout.matchKeyword(field.name());
+                    if (keyword.equals(Lucene.RECORD_KEY)) continue;
+                    int ordinal = layout.ordinal(keyword);
+                    if (ordinal >= 0) values[ordinal] = toValue(keyword, field);
+                    else if (keepUnknownFields) unknownFields.add(asPair(keyword, field));
+                }
+                return SourceRecord.record(document, sequence(unknownFields).fold(layout.nonNullRecord(values), updateValues()));
             }
         };
     }
 
-    public ToRecord<Document> asUnfilteredRecord(final Sequence<Keyword<?>> definitions) {
-        return new ToRecord<Document>() {
-            public Record call(Document document) throws Exception {
-                return sequence(document.getFields()).
-                        map(asPair(definitions)).
-                        filter(where(Callables.<Keyword<?>>first(), is(Predicates.<Keyword<?>>not(Lucene.RECORD_KEY)))).
-                        fold(SourceRecord.record(document), updateValues());
+    public RecordBatch.Filler<Document> intoBatch(final RecordLayout layout) {
+        return (document, builder) -> {
+            for (IndexableField field : document.getFields()) {
+                if (field.name().equalsIgnoreCase(Lucene.RECORD_KEY.name())) continue;
+                int ordinal = layout.ordinal(field.name());
+                if (ordinal >= 0) builder.set(ordinal, toValue(layout.keyword(ordinal), field));
             }
         };
     }
 
     public Function1<IndexableField, Pair<Keyword<?>, Object>> asPair(final Sequence<Keyword<?>> definitions) {
-        return fieldable -> {
-            String name = fieldable.name();
-            Keyword<?> keyword = Keyword.methods.matchKeyword(name, definitions);
-            return Pair.<Keyword<?>, Object>pair(keyword, stringMappings.toValue(keyword.forClass(), fieldable.stringValue()));
-        };
+        return fieldable -> asPair(Keyword.methods.matchKeyword(fieldable.name(), definitions), fieldable);
+    }
+
+    private Pair<Keyword<?>, Object> asPair(Keyword<?> keyword, IndexableField fieldable) {
+        return Pair.<Keyword<?>, Object>pair(keyword, toValue(keyword, fieldable));
+    }
+
+    private Object toValue(Keyword<?> keyword, IndexableField field) {
+        Class<?> aClass = keyword.forClass();
+        Number number = field.numericValue();
+        if (number == null) return stringMappings.toValue(aClass, field.stringValue());
+        if (aClass.equals(Integer.class)) return number.intValue();
+        if (aClass.equals(Long.class)) return number.longValue();
+        if (Date.class.isAssignableFrom(aClass)) return new Date(number.longValue());
+        if (aClass.equals(Double.class)) return number.doubleValue();
+        if (aClass.equals(Float.class)) return number.floatValue();
+        return stringMappings.toValue(aClass, number.toString());
     }
 
     public Function1<Pair<Keyword<?>, Object>, IndexableField> asField(final Sequence<Keyword<?>> definitions) {
@@ -81,6 +133,7 @@ public class LuceneMappings {
 
             String name = pair.first().name();
             Keyword<?> keyword = Keyword.methods.matchKeyword(name, definitions);
+            if (numericFields && numeric(keyword.forClass())) return numericField(name, keyword.forClass(), pair.second());
             FieldType fieldType = new FieldType(TextField.TYPE_STORED);
             fieldType.setOmitNorms(false);
             return new Field(name, LuceneMappings.this.stringMappings.toString(keyword.forClass(), pair.second()), fieldType);
@@ -88,17 +141,69 @@ public class LuceneMappings {
     }
 
     public RecordTo<Document> asDocument(final Definition definition) {
+        final Sequence<Keyword<?>> sortable = Definition.methods.marked(definition, Keywords.sortable);
         return new RecordTo<Document>() {
             public Document call(Record record) throws Exception {
-                return sortFields(definition, record).fields().
+                Document document = sortFields(definition, record).fields().
                         append(Pair.<Keyword<?>, Object>pair(Lucene.RECORD_KEY, definition)).
                         map(asField(definition.fields())).
                         filter(notNullValue()).
                         fold(new Document(), intoFields());
+                for (Keyword<?> keyword : sortable) {
+                    Object value = record.get(keyword);
+                    if (value != null) document.add(asDocValuesField(keyword, value));
+                }
+                return document;
             }
         };
     }
 
+    public static boolean numeric(Class<?> aClass) {
+        return aClass.equals(Integer.class) || aClass.equals(Long.class) || Date.class.isAssignableFrom(aClass) ||
+                aClass.equals(Double.class) || aClass.equals(Float.class);
+    }
+
+    private static IndexableField numericField(String name, Class<?> aClass, Object value) {
+        if (aClass.equals(Integer.class)) return new IntField(name, ((Number) value).intValue(), fieldType(IntField.TYPE_STORED));
+        if (aClass.equals(Long.class)) return new LongField(name, ((Number) value).longValue(), fieldType(LongField.TYPE_STORED));
+        if (Date.class.isAssignableFrom(aClass)) return new LongField(name, ((Date) value).getTime(), fieldType(LongField.TYPE_STORED));
+        return new DoubleField(name, ((Number) value).doubleValue(), fieldType(DoubleField.TYPE_STORED));
+    }
+
+    private static FieldType fieldType(FieldType storedType) {
+        FieldType fieldType = new FieldType(storedType);
+        fieldType.setNumericPrecisionStep(PRECISION_STEP);
+        return fieldType;
+    }
+
+    /** Adds the doc values of the sortable keywords to a document read back from an index written before they were sortable */
+    public Document addDocValues(Definition definition, Document document) {
+        for (Keyword<?> keyword : Definition.methods.marked(definition, Keywords.sortable)) {
+            IndexableField field = document.getField(keyword.name());
+            if (field != null) document.add(asDocValuesField(keyword, toValue(keyword, field)));
+        }
+        return document;
+    }
+
+    /** Sortable keywords also get a doc values field so sorting reads a column instead of un-inverting the terms on the heap */
+    public IndexableField asDocValuesField(Keyword<?> keyword, Object value) {
+        String name = keyword.name();
+        switch (sortType(keyword.forClass())) {
+            case LONG:
+                return new NumericDocValuesField(name, value instanceof Date ? ((Date) value).getTime() : ((Number) value).longValue());
+            case DOUBLE:
+                return new DoubleDocValuesField(name, ((Number) value).doubleValue());
+            default:
+                return new SortedDocValuesField(name, new BytesRef(stringMappings.toString(keyword.forClass(), value)));
+        }
+    }
+
+    public static SortField.Type sortType(Class<?> aClass) {
+        if (aClass.equals(Integer.class) || aClass.equals(Long.class) || aClass.equals(Short.class) || aClass.equals(Byte.class) || Date.class.isAssignableFrom(aClass)) return SortField.Type.LONG;
+        if (aClass.equals(Double.class) || aClass.equals(Float.class)) return SortField.Type.DOUBLE;
+        return SortField.Type.STRING;
+    }
+
     public static Curried2<? super Document, ? super IndexableField, Document> intoFields() {
         return (document, fieldable) -> {
             document.add(fieldable);
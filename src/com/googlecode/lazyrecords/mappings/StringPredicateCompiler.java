@@ -0,0 +1,102 @@
+package com.googlecode.lazyrecords.mappings;
+
+import com.googlecode.lazyrecords.PredicateCompiler;
+import com.googlecode.lazyrecords.RecordLayout;
+import com.googlecode.totallylazy.Unchecked;
+import com.googlecode.totallylazy.predicates.LogicalPredicate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compiles predicates for backends that store every field as the string produced by StringMappings.
+ * Constants are encoded once so equality, in and null checks (and ordering for lexical mappings) compare the stored
+ * strings without decoding them.
+ */
+public abstract class StringPredicateCompiler<R> extends PredicateCompiler<R> {
+    private final StringMappings mappings;
+    private final boolean[] lexical;
+
+    protected StringPredicateCompiler(RecordLayout layout, StringMappings mappings) {
+        super(layout);
+        this.mappings = mappings;
+        this.lexical = new boolean[layout.size()];
+        for (int i = 0; i < lexical.length; i++) {
+            Class<?> aClass = layout.keyword(i).forClass();
+            StringMapping<?> mapping = mappings.get(aClass);
+            lexical[i] = aClass.equals(String.class) || mapping instanceof LexicalIntegerMapping || mapping instanceof LexicalLongMapping;
+        }
+    }
+
+    protected abstract String raw(R row, int ordinal);
+
+    @Override
+    protected Object value(R row, int ordinal) {
+        return mappings.toValue(layout.keyword(ordinal).forClass(), raw(row, ordinal));
+    }
+
+    @Override
+    protected LogicalPredicate<R> equalTo(final int ordinal, Object expected) {
+        if (expected == null) return nullValue(ordinal);
+        final String encoded = encode(ordinal, expected);
+        if (encoded == null) return super.equalTo(ordinal, expected);
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return encoded.equals(raw(row, ordinal));
+            }
+        };
+    }
+
+    @Override
+    protected LogicalPredicate<R> compare(final int ordinal, Object value, final int min, final int max) {
+        final String encoded = lexical[ordinal] && value != null ? encode(ordinal, value) : null;
+        if (encoded == null) return super.compare(ordinal, value, min, max);
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                String actual = raw(row, ordinal);
+                if (actual == null) return false;
+                int result = Integer.signum(actual.compareTo(encoded));
+                return result >= min && result <= max;
+            }
+        };
+    }
+
+    @Override
+    protected LogicalPredicate<R> in(final int ordinal, Iterable<?> values) {
+        final Set<String> expected = new HashSet<String>();
+        for (Object value : values) {
+            String encoded = value == null ? null : encode(ordinal, value);
+            if (value != null && encoded == null) return super.in(ordinal, values);
+            expected.add(encoded);
+        }
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return expected.contains(raw(row, ordinal));
+            }
+        };
+    }
+
+    @Override
+    protected LogicalPredicate<R> nullValue(final int ordinal) {
+        return new LogicalPredicate<R>() {
+            @Override
+            public boolean matches(R row) {
+                return raw(row, ordinal) == null;
+            }
+        };
+    }
+
+    // Only use the stored string when it decodes back to the very same value, otherwise compare decoded values
+    private String encode(int ordinal, Object value) {
+        Class<Object> aClass = Unchecked.cast(layout.keyword(ordinal).forClass());
+        try {
+            String encoded = mappings.toString(aClass, value);
+            return value.equals(mappings.toValue(aClass, encoded)) ? encoded : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -3,8 +3,8 @@ package com.googlecode.lazyrecords.memory;
 import com.googlecode.lazyrecords.*;
 import com.googlecode.lazyrecords.Record;
 import com.googlecode.lazyrecords.mappings.StringMappings;
+import com.googlecode.lazyrecords.mappings.StringPredicateCompiler;
 import com.googlecode.totallylazy.*;
-import com.googlecode.totallylazy.functions.Callables;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.predicates.Predicate;
 
@@ -15,6 +15,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.googlecode.lazyrecords.Definition.functions.sortFields;
+import static com.googlecode.lazyrecords.SortedSequence.sortable;
 import static com.googlecode.totallylazy.Maps.map;
 import static com.googlecode.totallylazy.Sequences.sequence;
 
@@ -31,7 +32,18 @@ public class MemoryRecords extends AbstractRecords {
     }
 
     public Sequence<Record> get(Definition definition) {
-        return sequence(recordsFor(definition)).map(asRecord(definition));
+        return sortable(sequence(recordsFor(definition)).map(asRecord(definition)));
+    }
+
+    @Override
+    public Sequence<RecordBatch> batches(Definition definition, int batchSize) {
+        final RecordLayout layout = RecordLayout.layout(definition);
+        return RecordBatch.methods.batches(recordsFor(definition), layout, batchSize, (row, builder) -> {
+            for (int i = 0; i < layout.size(); i++) {
+                Keyword<?> keyword = layout.keyword(i);
+                builder.set(i, mappings.toValue(keyword.forClass(), row.get(keyword.name())));
+            }
+        });
     }
 
     private List<Map<String, String>> recordsFor(Definition definition) {
@@ -52,10 +64,8 @@ public class MemoryRecords extends AbstractRecords {
     }
 
     public Number remove(Definition definition, Predicate<? super Record> predicate) {
-        List<Map<String, String>> matches = get(definition).
-                filter(predicate).
-                <Value<Map<String, String>>>unsafeCast().
-                map(Callables.<Map<String, String>>value()).
+        List<Map<String, String>> matches = sequence(recordsFor(definition)).
+                filter(compiler(definition).compile(predicate)).
                 toList();
 
         recordsFor(definition).removeAll(matches);
@@ -63,12 +73,31 @@ public class MemoryRecords extends AbstractRecords {
         return matches.size();
     }
 
-    private Function1<Map<String, String>, Record> asRecord(final Definition definition) {
-        return data1 -> SourceRecord.record(data1, definition.fields().map(values(data1)));
+    private StringPredicateCompiler<Map<String, String>> compiler(final Definition definition) {
+        final Function1<Map<String, String>, Record> asRecord = asRecord(definition);
+        return new StringPredicateCompiler<Map<String, String>>(RecordLayout.layout(definition), mappings) {
+            @Override
+            protected String raw(Map<String, String> row, int ordinal) {
+                return row.get(layout.keyword(ordinal).name());
+            }
+
+            @Override
+            protected Record record(Map<String, String> row) throws Exception {
+                return asRecord.call(row);
+            }
+        };
     }
 
-    private Function1<Keyword<?>, Pair<Keyword<?>, Object>> values(final Map<String, String> map) {
-        return keyword -> Pair.<Keyword<?>, Object>pair(keyword, mappings.toValue(keyword.forClass(), map.get(keyword.name())));
+    private Function1<Map<String, String>, Record> asRecord(final Definition definition) {
+        final RecordLayout layout = RecordLayout.layout(definition);
+        return data1 -> {
+            Object[] values = new Object[layout.size()];
+            for (int i = 0; i < values.length; i++) {
+                Keyword<?> keyword = layout.keyword(i);
+                values[i] = mappings.toValue(keyword.forClass(), data1.get(keyword.name()));
+            }
+            return SourceRecord.record(data1, layout.record(values));
+        };
     }
 
     private Function1<Record, Map<String, String>> asMap(final Definition definition) {
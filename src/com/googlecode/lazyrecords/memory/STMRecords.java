@@ -4,23 +4,26 @@ import com.googlecode.lazyrecords.AbstractRecords;
 import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.RecordLayout;
 import com.googlecode.lazyrecords.RecordTo;
 import com.googlecode.lazyrecords.SourceRecord;
 import com.googlecode.lazyrecords.ToRecord;
 import com.googlecode.lazyrecords.Transaction;
 import com.googlecode.lazyrecords.mappings.StringMappings;
+import com.googlecode.lazyrecords.mappings.StringPredicateCompiler;
 import com.googlecode.totallylazy.*;
 import com.googlecode.totallylazy.collections.PersistentList;
 import com.googlecode.totallylazy.collections.PersistentMap;
 import com.googlecode.totallylazy.collections.PersistentSortedMap;
-import com.googlecode.totallylazy.functions.Callables;
 import com.googlecode.totallylazy.functions.Function1;
+import com.googlecode.totallylazy.predicates.LogicalPredicate;
 import com.googlecode.totallylazy.predicates.Predicate;
 
 import java.util.ConcurrentModificationException;
 
 import static com.googlecode.lazyrecords.Record.functions.merge;
 import static com.googlecode.lazyrecords.Record.methods.filter;
+import static com.googlecode.lazyrecords.SortedSequence.sortable;
 import static com.googlecode.totallylazy.Pair.pair;
 import static com.googlecode.totallylazy.Sequences.reverse;
 import static com.googlecode.totallylazy.Sequences.sequence;
@@ -42,7 +45,7 @@ public class STMRecords extends AbstractRecords implements Transaction {
     }
 
     public Sequence<Record> get(Definition definition) {
-        return sequence(listFor(snapshot.value(), definition)).map(asRecord(definition));
+        return sortable(sequence(listFor(snapshot.value(), definition)).map(asRecord(definition)));
     }
 
     public Number add(final Definition definition, final Sequence<Record> records) {
@@ -61,23 +64,19 @@ public class STMRecords extends AbstractRecords implements Transaction {
     }
 
 
-    private static PersistentList<PersistentMap<String, String>> matches(Predicate<? super Record> predicate, Sequence<Record> records) {
-        return records.filter(predicate).
-                <Value<PersistentMap<String, String>>>unsafeCast().
-                map(Callables.<PersistentMap<String, String>>value()).
-                toPersistentList();
-    }
-
     @Override
     public Number set(final Definition definition, final Sequence<? extends Pair<? extends Predicate<? super Record>, Record>> records) {
+        final StringPredicateCompiler<PersistentMap<String, String>> compiler = compiler(definition);
+        final Sequence<Pair<LogicalPredicate<PersistentMap<String, String>>, Record>> updates = records.
+                map(pair -> Pair.<LogicalPredicate<PersistentMap<String, String>>, Record>pair(compiler.compile(pair.first()), filter(pair.second(), definition.fields()))).
+                realise();
         return modifyReturn(database -> {
             PersistentList<PersistentMap<String, String>> table = listFor(database, definition);
             final int[] count = {0};
             PersistentList<PersistentMap<String, String>> result = table.toSequence().map(row -> {
-                for (Pair<? extends Predicate<? super Record>, Record> pair : records) {
-                    Record original = asRecord(definition, row);
-                    if (pair.first().matches(original)) {
-                        row = asPersistentMap(definition, merge(filter(pair.second(), definition.fields())).call(original));
+                for (Pair<LogicalPredicate<PersistentMap<String, String>>, Record> update : updates) {
+                    if (update.first().matches(row)) {
+                        row = asPersistentMap(definition, merge(update.second()).call(asRecord(definition, row)));
                         count[0]++;
                     }
                 }
@@ -114,20 +113,26 @@ public class STMRecords extends AbstractRecords implements Transaction {
     }
 
     private ToRecord<PersistentMap<String, String>> asRecord(final Definition definition) {
+        final RecordLayout layout = RecordLayout.layout(definition);
         return new ToRecord<PersistentMap<String, String>>() {
             @Override
             public Record call(PersistentMap<String, String> data) throws Exception {
-                return asRecord(definition, data);
+                return asRecord(layout, data);
             }
         };
     }
 
     private Record asRecord(Definition definition, PersistentMap<String, String> data) {
-        return SourceRecord.record(data, definition.fields().map(values(data)));
+        return asRecord(RecordLayout.layout(definition), data);
     }
 
-    private Function1<Keyword<?>, Pair<Keyword<?>, Object>> values(final PersistentMap<String, String> map) {
-        return keyword -> Pair.<Keyword<?>, Object>pair(keyword, mappings.toValue(keyword.forClass(), map.lookup(keyword.name()).getOrNull()));
+    private Record asRecord(RecordLayout layout, PersistentMap<String, String> data) {
+        Object[] values = new Object[layout.size()];
+        for (int i = 0; i < values.length; i++) {
+            Keyword<?> keyword = layout.keyword(i);
+            values[i] = mappings.toValue(keyword.forClass(), data.lookup(keyword.name()).getOrNull());
+        }
+        return SourceRecord.record(data, layout.record(values));
     }
 
     private RecordTo<PersistentMap<String, String>> asPersistentMap(final Definition definition) {
@@ -171,6 +176,23 @@ public class STMRecords extends AbstractRecords implements Transaction {
     }
 
     private PersistentList<PersistentMap<String, String>> matches(PersistentMap<Definition, PersistentList<PersistentMap<String, String>>> data, Definition definition, Predicate<? super Record> predicate) {
-        return matches(predicate, sequence(listFor(data, definition)).map(STMRecords.this.asRecord(definition)));
+        return sequence(listFor(data, definition)).
+                filter(compiler(definition).compile(predicate)).
+                toPersistentList();
+    }
+
+    private StringPredicateCompiler<PersistentMap<String, String>> compiler(final Definition definition) {
+        final ToRecord<PersistentMap<String, String>> asRecord = asRecord(definition);
+        return new StringPredicateCompiler<PersistentMap<String, String>>(RecordLayout.layout(definition), mappings) {
+            @Override
+            protected String raw(PersistentMap<String, String> row, int ordinal) {
+                return row.lookup(layout.keyword(ordinal).name()).getOrNull();
+            }
+
+            @Override
+            protected Record record(PersistentMap<String, String> row) throws Exception {
+                return asRecord.call(row);
+            }
+        };
     }
 }
@@ -0,0 +1,148 @@
+package com.googlecode.lazyrecords.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches up to size prepared statements by SQL text so the same query or update is only prepared once per connection.
+ * A statement is taken out of the cache while it is in use, so two open queries never share one; closing it closes
+ * any result set still open, clears its parameters and batch, resets fetch size, query timeout and max rows and puts
+ * it back, closing the least recently used statement when the cache is full.
+ * Wrap the physical connection (not one that hands out a pooled connection per statement like ReadOnlyConnection).
+ */
+public class CachingConnection extends DelegatingConnection {
+    private final Map<String, PreparedStatement> statements;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private CachingConnection(Connection connection, final int maximum) {
+        super(connection);
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= maximum) return false;
+                close(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public static CachingConnection cachingConnection(Connection connection, int size) {
+        return new CachingConnection(connection, size);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        String key = resultSetType + ":" + resultSetConcurrency + ":" + sql;
+        PreparedStatement statement;
+        synchronized (statements) {
+            statement = statements.remove(key);
+        }
+        if (statement != null) hits.incrementAndGet();
+        else {
+            misses.incrementAndGet();
+            statement = super.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        }
+        return new CachedStatement(key, statement);
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        List<PreparedStatement> cached;
+        synchronized (statements) {
+            cached = new ArrayList<PreparedStatement>(statements.values());
+            statements.clear();
+        }
+        for (PreparedStatement statement : cached) close(statement);
+        super.close();
+    }
+
+    private void release(String key, PreparedStatement statement, ResultSet resultSet) {
+        try {
+            if (resultSet != null) resultSet.close();
+            ResultSet current = statement.getResultSet();
+            if (current != null) current.close();
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            statement.setFetchSize(0);
+            statement.setQueryTimeout(0);
+            statement.setMaxRows(0);
+        } catch (SQLException e) {
+            close(statement);
+            return;
+        }
+        synchronized (statements) {
+            if (!statements.containsKey(key)) {
+                statements.put(key, statement);
+                return;
+            }
+        }
+        close(statement);
+    }
+
+    private static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private class CachedStatement extends DelegatingPrepareStatement {
+        private final String key;
+        private final PreparedStatement statement;
+        private ResultSet resultSet;
+        private boolean closed;
+
+        private CachedStatement(String key, PreparedStatement statement) {
+            super(statement);
+            this.key = key;
+            this.statement = statement;
+        }
+
+        @Override
+        public synchronized void close() throws SQLException {
+            if (closed) return;
+            closed = true;
+            release(key, statement, resultSet);
+            resultSet = null;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return resultSet = super.executeQuery();
+        }
+
+        // Once closed the statement may already be running someone else's query
+        @Override
+        public synchronized void cancel() throws SQLException {
+            if (closed) return;
+            statement.cancel();
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed || statement.isClosed();
+        }
+    }
+}
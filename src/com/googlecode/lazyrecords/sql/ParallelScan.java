@@ -0,0 +1,251 @@
+package com.googlecode.lazyrecords.sql;
+
+import com.googlecode.lazyrecords.Definition;
+import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Logger;
+import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.sql.grammars.SqlGrammar;
+import com.googlecode.lazyrecords.sql.mappings.SqlMappings;
+import com.googlecode.totallylazy.LazyException;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Unchecked;
+import com.googlecode.totallylazy.iterators.StatefulIterator;
+import com.googlecode.totallylazy.predicates.Predicate;
+import com.googlecode.totallylazy.predicates.Predicates;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.lazyrecords.Aggregate.maximum;
+import static com.googlecode.lazyrecords.Aggregate.minimum;
+import static com.googlecode.lazyrecords.Aggregates.to;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.comparators.Comparators.ascending;
+import static com.googlecode.totallylazy.predicates.Predicates.always;
+import static com.googlecode.totallylazy.predicates.Predicates.and;
+import static com.googlecode.totallylazy.predicates.Predicates.nullValue;
+import static com.googlecode.totallylazy.predicates.Predicates.where;
+
+/**
+ * Reads a table in parallel by splitting the range of a numeric or date keyword into partitions that are queried
+ * concurrently, each on its own connection from the data source, plus a last partition for rows with a null key.
+ * Rows are handed over through bounded queues so memory stays flat; an ordered scan sorts each partition by the key
+ * and returns the partitions in key order (nulls last).
+ * Close the iterator (or read it to the end) to release the connections and threads; closing the scan closes every
+ * iterator that is still open, so an abandoned iteration (after take(n) for example) does not hold them forever.
+ * Reading on from an iterator stopped by closing the scan throws a CancellationException, so a scan that was cut short
+ * can not be mistaken for one that ran to the end.
+ * The predicate must translate to SQL, otherwise the scan fails straight away rather than filtering on the client.
+ */
+public class ParallelScan implements Closeable {
+    private static final Object END = new Object();
+    private final DataSource dataSource;
+    private final SqlMappings mappings;
+    private final SqlGrammar grammar;
+    private final Logger logger;
+    private final int partitions;
+    private final int bufferSize;
+    private final Set<ScanIterator> open = Collections.newSetFromMap(new ConcurrentHashMap<ScanIterator, Boolean>());
+
+    private ParallelScan(DataSource dataSource, SqlMappings mappings, SqlGrammar grammar, Logger logger, int partitions, int bufferSize) {
+        this.dataSource = dataSource;
+        this.mappings = mappings;
+        this.grammar = grammar;
+        this.logger = logger;
+        this.partitions = Math.max(1, partitions);
+        this.bufferSize = Math.max(1, bufferSize);
+    }
+
+    public static ParallelScan parallelScan(DataSource dataSource, SqlMappings mappings, SqlGrammar grammar, Logger logger, int partitions, int bufferSize) {
+        return new ParallelScan(dataSource, mappings, grammar, logger, partitions, bufferSize);
+    }
+
+    public static ParallelScan parallelScan(DataSource dataSource, SqlGrammar grammar, Logger logger, int partitions) {
+        return parallelScan(dataSource, new SqlMappings(), grammar, logger, partitions, 1000);
+    }
+
+    public Sequence<Record> scan(Definition definition, Keyword<?> key) {
+        return scan(definition, always(), key, false);
+    }
+
+    public Sequence<Record> scan(final Definition definition, final Predicate<? super Record> predicate, final Keyword<?> key, final boolean ordered) {
+        return sequence(new Iterable<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                return new ScanIterator(definition, partitions(definition, predicate, key), key, ordered);
+            }
+        });
+    }
+
+    List<Predicate<Record>> partitions(Definition definition, Predicate<? super Record> predicate, Keyword<?> key) {
+        Keyword<Object> keyword = Unchecked.cast(key);
+        Record bounds;
+        try (Connection connection = dataSource.getConnection(); SqlRecords records = new SqlRecords(connection, mappings, grammar, logger)) {
+            Sequence<Record> filtered = records.get(definition).filter(predicate);
+            if (!(filtered instanceof SqlSequence))
+                throw new UnsupportedOperationException("Can not scan in parallel with a predicate that does not translate to SQL: " + predicate);
+            bounds = filtered.reduce(to(minimum(keyword), maximum(keyword)));
+        } catch (UnsupportedOperationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw LazyException.lazyException(e);
+        }
+        Object min = bounds.get(minimum(keyword));
+        Object max = bounds.get(maximum(keyword));
+        List<Predicate<Record>> result = new ArrayList<Predicate<Record>>();
+        if (min != null) {
+            Object[] splits = splits(min, max, partitions);
+            for (int i = 0; i < partitions; i++) {
+                Predicate<Object> lower = Unchecked.cast(Predicates.greaterThanOrEqualTo((Comparable) splits[i]));
+                Predicate<Object> upper = Unchecked.cast(i == partitions - 1 ? Predicates.lessThanOrEqualTo((Comparable) splits[i + 1]) : Predicates.lessThan((Comparable) splits[i + 1]));
+                result.add(Unchecked.<Predicate<Record>>cast(and(predicate, where(keyword, lower), where(keyword, upper))));
+            }
+        }
+        result.add(Unchecked.<Predicate<Record>>cast(and(predicate, where(keyword, nullValue()))));
+        return result;
+    }
+
+    private static Object[] splits(Object min, Object max, int partitions) {
+        BigDecimal low = decimal(min);
+        BigDecimal range = decimal(max).subtract(low);
+        Object[] result = new Object[partitions + 1];
+        result[0] = min;
+        result[partitions] = max;
+        for (int i = 1; i < partitions; i++) {
+            BigDecimal split = low.add(range.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(partitions), MathContext.DECIMAL64));
+            result[i] = as(split, min.getClass());
+        }
+        return result;
+    }
+
+    private static BigDecimal decimal(Object value) {
+        if (value instanceof Date) return BigDecimal.valueOf(((Date) value).getTime());
+        if (value instanceof Number) return new BigDecimal(value.toString());
+        throw new UnsupportedOperationException("Can only partition on numbers and dates, not " + value.getClass());
+    }
+
+    private static Object as(BigDecimal value, Class<?> aClass) {
+        if (Date.class.isAssignableFrom(aClass)) return new Date(value.longValue());
+        if (aClass.equals(Integer.class)) return value.intValue();
+        if (aClass.equals(Long.class)) return value.longValue();
+        if (aClass.equals(Short.class)) return value.shortValue();
+        if (aClass.equals(Double.class)) return value.doubleValue();
+        if (aClass.equals(Float.class)) return value.floatValue();
+        if (aClass.equals(BigInteger.class)) return value.toBigInteger();
+        if (aClass.equals(BigDecimal.class)) return value;
+        throw new UnsupportedOperationException("Can only partition on numbers and dates, not " + aClass);
+    }
+
+    private class ScanIterator extends StatefulIterator<Record> implements Closeable {
+        private final List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+        private final int[] running;
+        private final ExecutorService executor;
+        private volatile boolean closed;
+        private volatile boolean cancelled;
+        private int current;
+
+        private ScanIterator(final Definition definition, List<Predicate<Record>> parts, final Keyword<?> key, final boolean ordered) {
+            int queueCount = ordered ? parts.size() : 1;
+            running = new int[queueCount];
+            for (int i = 0; i < queueCount; i++) queues.add(new ArrayBlockingQueue<Object>(bufferSize));
+            // Every partition needs its own thread, otherwise an ordered scan could wait on a partition that never starts
+            executor = Executors.newFixedThreadPool(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                final Predicate<Record> part = parts.get(i);
+                final BlockingQueue<Object> queue = queues.get(ordered ? i : 0);
+                running[ordered ? i : 0]++;
+                executor.execute(() -> {
+                    try (Connection connection = dataSource.getConnection(); SqlRecords records = new SqlRecords(connection, mappings, grammar, logger)) {
+                        Sequence<Record> rows = records.get(definition).filter(part);
+                        if (ordered) rows = rows.sortBy(ascending(Unchecked.<Keyword<Comparable<Object>>>cast(key)));
+                        if (!(rows instanceof SqlSequence))
+                            throw new UnsupportedOperationException("Can not scan " + definition + " by " + key + " in SQL");
+                        for (Record row : ((SqlSequence<Record>) rows).stream(bufferSize)) {
+                            if (!put(queue, row)) return;
+                        }
+                        put(queue, END);
+                    } catch (Exception e) {
+                        put(queue, new Failure(e));
+                    }
+                });
+            }
+            executor.shutdown();
+            open.add(this);
+        }
+
+        private boolean put(BlockingQueue<Object> queue, Object item) {
+            try {
+                while (!closed) {
+                    if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        @Override
+        protected Record getNext() throws Exception {
+            while (current < queues.size() && !closed) {
+                Object item = queues.get(current).poll(100, TimeUnit.MILLISECONDS);
+                if (item == null) continue;
+                if (item == END) {
+                    if (--running[current] == 0) current++;
+                    continue;
+                }
+                if (item instanceof Failure) {
+                    close();
+                    throw LazyException.lazyException(((Failure) item).cause);
+                }
+                return (Record) item;
+            }
+            if (cancelled) throw new CancellationException("The parallel scan was closed before every row was read");
+            close();
+            return finished();
+        }
+
+        private void cancel() {
+            cancelled = true;
+            close();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            executor.shutdownNow();
+            for (BlockingQueue<Object> queue : queues) queue.clear();
+            open.remove(this);
+        }
+    }
+
+    /** Stops every scan that has not been read to the end or closed */
+    @Override
+    public void close() {
+        for (ScanIterator iterator : open) iterator.cancel();
+    }
+
+    private static class Failure {
+        private final Exception cause;
+
+        private Failure(Exception cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -20,14 +20,22 @@ public class ReadOnlyConnection implements Connection {
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        Connection connection = connection();
-        return new ClosingPrepareStatement(connection, connection.prepareStatement(sql));
+        return prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    /** Every statement gets its own connection, which is held until the statement (and so the iteration) is closed */
+    protected Connection connection() throws SQLException {
+        return readOnly(dataSource.getConnection());
+    }
+
+    protected void release(Connection connection) throws SQLException {
+        connection.close();
     }
 
-    private Connection connection() throws SQLException {
-        Connection connection = dataSource.getConnection();
-        connection.setAutoCommit(true);
-        connection.setReadOnly(true);
+    // Pooled connections usually come back in the right state so only pay for the session calls when they are needed
+    protected static Connection readOnly(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) connection.setAutoCommit(true);
+        if (!connection.isReadOnly()) connection.setReadOnly(true);
         return connection;
     }
 
@@ -123,7 +131,13 @@ public class ReadOnlyConnection implements Connection {
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        throw new UnsupportedOperationException();
+        Connection connection = connection();
+        try {
+            return new ClosingPrepareStatement(connection, connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+        } catch (SQLException e) {
+            release(connection);
+            throw e;
+        }
     }
 
     @Override
@@ -296,8 +310,11 @@ public class ReadOnlyConnection implements Connection {
 
         @Override
         public void close() throws SQLException {
-            super.close();
-            connection.close();
+            try {
+                super.close();
+            } finally {
+                release(connection);
+            }
         }
     }
 }
@@ -0,0 +1,86 @@
+package com.googlecode.lazyrecords.sql;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+
+/**
+ * A ReadOnlyConnection that spreads statements across read replicas, either round robin or to the replica with the
+ * fewest statements still open. A statement keeps its connection until it is closed, so a SqlSequence iteration
+ * always reads from a single replica.
+ */
+public class ReplicaConnection extends ReadOnlyConnection {
+    private final List<DataSource> replicas;
+    private final boolean leastOutstanding;
+    private final AtomicInteger[] outstanding;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<Connection, Integer> borrowed = Collections.synchronizedMap(new IdentityHashMap<Connection, Integer>());
+
+    private ReplicaConnection(List<DataSource> replicas, boolean leastOutstanding) {
+        super(replicas.get(0));
+        this.replicas = new ArrayList<DataSource>(replicas);
+        this.leastOutstanding = leastOutstanding;
+        this.outstanding = new AtomicInteger[replicas.size()];
+        for (int i = 0; i < outstanding.length; i++) outstanding[i] = new AtomicInteger();
+    }
+
+    public static ReplicaConnection roundRobin(List<DataSource> replicas) {
+        return new ReplicaConnection(replicas, false);
+    }
+
+    public static ReplicaConnection roundRobin(DataSource... replicas) {
+        return roundRobin(asList(replicas));
+    }
+
+    public static ReplicaConnection leastOutstanding(List<DataSource> replicas) {
+        return new ReplicaConnection(replicas, true);
+    }
+
+    public static ReplicaConnection leastOutstanding(DataSource... replicas) {
+        return leastOutstanding(asList(replicas));
+    }
+
+    public int outstanding(int replica) {
+        return outstanding[replica].get();
+    }
+
+    @Override
+    protected Connection connection() throws SQLException {
+        int replica = choose();
+        outstanding[replica].incrementAndGet();
+        try {
+            Connection connection = readOnly(replicas.get(replica).getConnection());
+            borrowed.put(connection, replica);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            outstanding[replica].decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void release(Connection connection) throws SQLException {
+        Integer replica = borrowed.remove(connection);
+        if (replica != null) outstanding[replica].decrementAndGet();
+        super.release(connection);
+    }
+
+    private int choose() {
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size();
+        if (!leastOutstanding) return start;
+        int best = start;
+        for (int i = 1; i < replicas.size(); i++) {
+            int candidate = (start + i) % replicas.size();
+            if (outstanding[candidate].get() < outstanding[best].get()) best = candidate;
+        }
+        return best;
+    }
+}
@@ -1,10 +1,18 @@
 package com.googlecode.lazyrecords.sql;
 
+import com.googlecode.lazyrecords.Cancellation;
 import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Logger;
 import com.googlecode.lazyrecords.Loggers;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.RecordBatch;
+import com.googlecode.lazyrecords.RecordLayout;
 import com.googlecode.lazyrecords.sql.expressions.Expression;
+import com.googlecode.lazyrecords.sql.mappings.BooleanMapping;
+import com.googlecode.lazyrecords.sql.mappings.DateMapping;
+import com.googlecode.lazyrecords.sql.mappings.IntegerMapping;
+import com.googlecode.lazyrecords.sql.mappings.LongMapping;
+import com.googlecode.lazyrecords.sql.mappings.SqlMapping;
 import com.googlecode.lazyrecords.sql.mappings.SqlMappings;
 import com.googlecode.totallylazy.functions.Callables;
 import com.googlecode.totallylazy.functions.Lazy;
@@ -12,6 +20,7 @@ import com.googlecode.totallylazy.LazyException;
 import com.googlecode.totallylazy.Maps;
 import com.googlecode.totallylazy.Pair;
 import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Unchecked;
 import com.googlecode.totallylazy.iterators.StatefulIterator;
 
 import java.io.Closeable;
@@ -20,29 +29,54 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
-import static com.googlecode.lazyrecords.Keyword.methods.matchKeyword;
-import static com.googlecode.lazyrecords.Record.constructors.record;
-import static com.googlecode.totallylazy.functions.Callables.second;
 import static com.googlecode.totallylazy.Pair.pair;
-import static com.googlecode.totallylazy.predicates.Predicates.notNullValue;
-import static com.googlecode.totallylazy.predicates.Predicates.where;
 import static com.googlecode.totallylazy.functions.Time0.calculateMilliseconds;
 import static com.googlecode.totallylazy.numbers.Numbers.range;
 
-public class SqlIterator extends StatefulIterator<Record> implements Closeable {
-    private final SqlMappings mappings;
+public class SqlIterator extends StatefulIterator<Record> implements Closeable, Cancellation.Cancellable {
+    private final Cancellation cancellation;
     private final Lazy<PreparedStatement> preparedStatement;
     private final Lazy<ResultSet> resultSet;
     private final Lazy<Sequence<Pair<Integer, Keyword<Object>>>> keywords;
+    private final Lazy<RecordLayout> layout;
+    private final Lazy<Columns> columns;
+    private final Object lock = new Object();
+    private volatile PreparedStatement running;
+    private volatile boolean cancelled;
 
     public SqlIterator(final Connection connection, final SqlMappings mappings, final Expression expression, final Sequence<Keyword<?>> definitions, final Logger logger) {
-        this.mappings = mappings;
+        this(connection, mappings, expression, definitions, logger, 0);
+    }
+
+    /** A fetch size other than 0 reads a forward only, read only result set with that fetch size (Integer.MIN_VALUE streams rows on MySQL) */
+    public SqlIterator(final Connection connection, final SqlMappings mappings, final Expression expression, final Sequence<Keyword<?>> definitions, final Logger logger, final int fetchSize) {
+        this(connection, mappings, expression, definitions, logger, fetchSize, 0, Cancellation.cancellation());
+    }
+
+    /** A query timeout other than 0 is the number of seconds the driver lets the statement run before cancelling it */
+    public SqlIterator(final Connection connection, final SqlMappings mappings, final Expression expression, final Sequence<Keyword<?>> definitions, final Logger logger, final int fetchSize, final int queryTimeout, final Cancellation cancellation) {
+        this(connection, mappings, expression, RecordLayout.layout(definitions), logger, fetchSize, queryTimeout, cancellation);
+    }
+
+    /** Matches the result set columns against an existing layout, such as the cached {@link com.googlecode.lazyrecords.Definition#layout()} */
+    public SqlIterator(final Connection connection, final SqlMappings mappings, final Expression expression, final RecordLayout definitionsLayout, final Logger logger, final int fetchSize, final int queryTimeout, final Cancellation cancellation) {
+        this.cancellation = cancellation.register(this);
         preparedStatement = new Lazy<PreparedStatement>() {
             @Override
             protected PreparedStatement get() throws Exception {
-                return connection.prepareStatement(expression.text());
+                PreparedStatement statement = fetchSize == 0 ? connection.prepareStatement(expression.text()) : connection.prepareStatement(expression.text(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                if (fetchSize != 0) statement.setFetchSize(fetchSize);
+                if (queryTimeout > 0) statement.setQueryTimeout(queryTimeout);
+                synchronized (lock) {
+                    return running = statement;
+                }
             }
         };
         resultSet = new Lazy<ResultSet>() {
@@ -69,14 +103,27 @@ public class SqlIterator extends StatefulIterator<Record> implements Closeable {
                 final ResultSetMetaData metaData = resultSet.value().getMetaData();
                 return range(1).take(metaData.getColumnCount()).safeCast(Integer.class).map(index -> {
                     final String name = metaData.getColumnLabel(index);
-                    return pair(index, matchKeyword(name, definitions));
+                    return pair(index, definitionsLayout.matchKeyword(name));
                 }).unique(Callables.<Keyword<Object>>second()).realise();
             }
         };
+        layout = new Lazy<RecordLayout>() {
+            @Override
+            protected RecordLayout get() throws Exception {
+                return RecordLayout.layout(keywords.value().map(Callables.<Keyword<Object>>second()));
+            }
+        };
+        columns = new Lazy<Columns>() {
+            @Override
+            protected Columns get() throws Exception {
+                return new Columns(keywords.value(), mappings);
+            }
+        };
     }
 
     @Override
     protected Record getNext() throws Exception {
+        checkCancelled();
         final ResultSet result = resultSet.value();
         boolean hasNext = result.next();
         if (!hasNext) {
@@ -84,14 +131,105 @@ public class SqlIterator extends StatefulIterator<Record> implements Closeable {
             return finished();
         }
 
-        return record(keywords.value().map(pair -> {
-            Keyword<Object> keyword = pair.second();
-            Integer index = pair.first();
-            return pair(keyword, mappings.getValue(result, index, keyword.forClass()));
-        }).filter(where(second(Object.class), notNullValue())));
+        Columns columns = this.columns.value();
+        Object[] values = new Object[columns.indexes.length];
+        for (int column = 0; column < values.length; column++) {
+            values[column] = columns.mappings[column].getValue(result, columns.indexes[column]);
+        }
+        return layout.value().nonNullRecord(values);
+    }
+
+    public Iterator<RecordBatch> batches(final int batchSize) {
+        return new StatefulIterator<RecordBatch>() {
+            private RecordBatch.Builder builder;
+
+            @Override
+            protected RecordBatch getNext() throws Exception {
+                checkCancelled();
+                final ResultSet result = resultSet.value();
+                if (builder == null) builder = RecordBatch.builder(layout.value(), batchSize);
+                Columns columns = SqlIterator.this.columns.value();
+                while (!builder.isFull() && result.next()) {
+                    for (int column = 0; column < columns.indexes.length; column++) {
+                        read(result, columns.indexes[column], columns.classes[column], columns.mappings[column], builder, column);
+                    }
+                    builder.next();
+                }
+                if (builder.size() == 0) {
+                    close();
+                    return finished();
+                }
+                return builder.build();
+            }
+        };
+    }
+
+    // The result set columns compiled once per query so reading a row is a loop over arrays
+    private static class Columns {
+        private final int[] indexes;
+        private final Class<?>[] classes;
+        private final SqlMapping<Object>[] mappings;
+
+        private Columns(Sequence<Pair<Integer, Keyword<Object>>> keywords, SqlMappings sqlMappings) {
+            indexes = new int[keywords.size()];
+            classes = new Class<?>[indexes.length];
+            mappings = Unchecked.cast(new SqlMapping[indexes.length]);
+            int column = 0;
+            for (Pair<Integer, Keyword<Object>> pair : keywords) {
+                indexes[column] = pair.first();
+                classes[column] = pair.second().forClass();
+                mappings[column] = sqlMappings.get(classes[column]);
+                column++;
+            }
+        }
+    }
+
+    // Reads the primitive columns straight into the batch so no boxed value is created per cell
+    private static void read(ResultSet result, int index, Class<?> aClass, SqlMapping<Object> mapping, RecordBatch.Builder builder, int column) throws SQLException {
+        if (mapping instanceof IntegerMapping && (aClass.equals(Integer.class) || aClass.equals(int.class))) {
+            int value = result.getInt(index);
+            if (!result.wasNull()) builder.setInt(column, value);
+        } else if (mapping instanceof LongMapping && (aClass.equals(Long.class) || aClass.equals(long.class))) {
+            long value = result.getLong(index);
+            if (!result.wasNull()) builder.setLong(column, value);
+        } else if (mapping instanceof BooleanMapping && aClass.equals(Boolean.class)) {
+            boolean value = result.getBoolean(index);
+            if (!result.wasNull()) builder.setBoolean(column, value);
+        } else if (mapping instanceof DateMapping && aClass.equals(Date.class)) {
+            Timestamp value = result.getTimestamp(index);
+            if (value != null) builder.setLong(column, value.getTime());
+        } else {
+            builder.set(column, mapping.getValue(result, index));
+        }
+    }
+
+    /** Asks the database to stop the running statement; the next read closes the iterator and throws a CancellationException */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        synchronized (lock) {
+            if (running == null) return;
+            try {
+                running.cancel();
+            } catch (SQLException ignored) {
+                // the statement may have completed in the meantime
+            }
+        }
+    }
+
+    private void checkCancelled() throws IOException {
+        if (!cancelled) return;
+        if (running != null) close();
+        else cancellation.remove(this);
+        throw new CancellationException("Query was cancelled");
     }
 
     public void close() throws IOException {
+        cancellation.remove(this);
+        // waits for a cancel in progress so it can never reach the statement once it has been handed back
+        synchronized (lock) {
+            running = null;
+        }
         resultSet.close();
         preparedStatement.close();
     }
@@ -1,15 +1,21 @@
 package com.googlecode.lazyrecords.sql;
 
 import com.googlecode.lazyrecords.AbstractRecords;
+import com.googlecode.lazyrecords.Cancellation;
+import com.googlecode.lazyrecords.ClientExecution;
 import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.IgnoreLogger;
 import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Keywords;
 import com.googlecode.lazyrecords.Logger;
 import com.googlecode.lazyrecords.Loggers;
 import com.googlecode.lazyrecords.Queryable;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.RecordBatch;
+import com.googlecode.lazyrecords.RecordLayout;
 import com.googlecode.lazyrecords.sql.expressions.AnsiSelectBuilder;
 import com.googlecode.lazyrecords.sql.expressions.Expression;
+import com.googlecode.lazyrecords.sql.expressions.ExpressionBuilder;
 import com.googlecode.lazyrecords.sql.grammars.AnsiSqlGrammar;
 import com.googlecode.lazyrecords.sql.grammars.SqlGrammar;
 import com.googlecode.lazyrecords.sql.mappings.SqlMappings;
@@ -17,22 +23,31 @@ import com.googlecode.totallylazy.collections.CloseableList;
 import com.googlecode.totallylazy.Computation;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.functions.Functions;
+import com.googlecode.totallylazy.iterators.StatefulIterator;
 import com.googlecode.totallylazy.LazyException;
 import com.googlecode.totallylazy.Maps;
 import com.googlecode.totallylazy.Option;
 import com.googlecode.totallylazy.Pair;
+import com.googlecode.totallylazy.Unchecked;
+import com.googlecode.totallylazy.predicates.AndPredicate;
+import com.googlecode.totallylazy.predicates.EqualsPredicate;
 import com.googlecode.totallylazy.predicates.Predicate;
+import com.googlecode.totallylazy.predicates.WherePredicate;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.numbers.Numbers;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.googlecode.lazyrecords.Loggers.milliseconds;
-import static com.googlecode.lazyrecords.sql.grammars.SqlGrammar.functions.insertStatement;
 import static com.googlecode.lazyrecords.sql.grammars.SqlGrammar.functions.updateStatement;
 import static com.googlecode.totallylazy.Closeables.safeClose;
 import static com.googlecode.totallylazy.Closeables.using;
@@ -50,41 +65,159 @@ public class SqlRecords extends AbstractRecords implements Queryable<Expression>
     private final SqlMappings mappings;
     private final SqlGrammar grammar;
     private final Logger logger;
+    public static final int DEFAULT_BATCH_ROWS = 1000;
+    public static final int DEFAULT_BATCH_PARAMETERS = 2000;
+    private final ClientExecution clientExecution;
+    private final int batchRows;
+    private final int batchParameters;
+    private final int queryTimeout;
     private final CloseableList<SqlIterator> closeables = closeableList();
 
-    public SqlRecords(final Connection connection, SqlMappings mappings, SqlGrammar grammar, Logger logger) {
+    /**
+     * batchRows and batchParameters cap how many statements (or rows of a multi-row insert) and bind parameters go
+     * into a single JDBC batch or insert statement before it is executed.
+     * queryTimeout is the default number of seconds a query may run before the driver cancels it (0 for no limit).
+     */
+    public SqlRecords(final Connection connection, SqlMappings mappings, SqlGrammar grammar, Logger logger, ClientExecution clientExecution, int batchRows, int batchParameters, int queryTimeout) {
         this.connection = connection;
         this.mappings = mappings;
         this.logger = logger;
         this.grammar = grammar;
+        this.clientExecution = clientExecution;
+        this.batchRows = Math.max(1, batchRows);
+        this.batchParameters = Math.max(1, batchParameters);
+        this.queryTimeout = Math.max(0, queryTimeout);
+    }
+
+    public SqlRecords(final Connection connection, SqlMappings mappings, SqlGrammar grammar, Logger logger, ClientExecution clientExecution, int batchRows, int batchParameters) {
+        this(connection, mappings, grammar, logger, clientExecution, batchRows, batchParameters, 0);
+    }
+
+    public SqlRecords(final Connection connection, SqlMappings mappings, SqlGrammar grammar, Logger logger, ClientExecution clientExecution) {
+        this(connection, mappings, grammar, logger, clientExecution, DEFAULT_BATCH_ROWS, DEFAULT_BATCH_PARAMETERS);
+    }
+
+    public SqlRecords(final Connection connection, SqlMappings mappings, SqlGrammar grammar, Logger logger) {
+        this(connection, mappings, grammar, logger, ClientExecution.sequential());
     }
 
     public SqlRecords(final Connection connection) {
         this(connection, new SqlMappings(), new AnsiSqlGrammar(), new IgnoreLogger());
     }
 
+    /**
+     * Records whose queries, streams and updates share a cache of up to statementCacheSize prepared statements (see
+     * {@link CachingConnection}); the other constructors prepare every statement afresh unless given a CachingConnection.
+     * The cached statements belong to the connection and are closed with it.
+     */
+    public static SqlRecords cachingStatements(final Connection connection, SqlMappings mappings, SqlGrammar grammar, Logger logger, int statementCacheSize) {
+        return new SqlRecords(CachingConnection.cachingConnection(connection, statementCacheSize), mappings, grammar, logger);
+    }
+
     Connection connection() {
         return connection;
     }
 
+    ClientExecution clientExecution() {
+        return clientExecution;
+    }
+
     public void close() throws IOException {
         closeables.close();
     }
 
 
     public SqlSequence<Record> get(Definition definition) {
-        return new SqlSequence<Record>(this, AnsiSelectBuilder.from(grammar, definition), logger, Functions.<Record>identity());
+        return new SqlSequence<Record>(this, AnsiSelectBuilder.from(grammar, definition), definition.layout(), logger, Functions.<Record>identity());
+    }
+
+    @Override
+    public Sequence<RecordBatch> batches(final Definition definition, final int batchSize) {
+        final ExpressionBuilder builder = AnsiSelectBuilder.from(grammar, definition);
+        return sequence(new Iterable<RecordBatch>() {
+            @Override
+            public Iterator<RecordBatch> iterator() {
+                return closeables.manage(new SqlIterator(connection, mappings, builder.build(), definition.layout(), logger, 0, queryTimeout, Cancellation.cancellation())).batches(batchSize);
+            }
+        });
     }
 
     public Sequence<Record> query(final Expression expression, final Sequence<Keyword<?>> definitions) {
-        return Computation.memorise(closeables.manage(new SqlIterator(connection, mappings, expression, definitions, logger)));
+        return query(expression, definitions, 0, Cancellation.cancellation());
+    }
+
+    /** A queryTimeout of 0 uses the default of these records */
+    public Sequence<Record> query(final Expression expression, final Sequence<Keyword<?>> definitions, final int queryTimeout, final Cancellation cancellation) {
+        return query(expression, RecordLayout.layout(definitions), queryTimeout, cancellation);
+    }
+
+    public Sequence<Record> query(final Expression expression, final RecordLayout definitions, final int queryTimeout, final Cancellation cancellation) {
+        return Computation.memorise(closeables.manage(new SqlIterator(connection, mappings, expression, definitions, logger, 0, timeout(queryTimeout), cancellation)));
+    }
+
+    /** Runs the query again for every iteration without memorising the rows; the result set is closed once the iterator is exhausted or closed */
+    public Sequence<Record> stream(final Expression expression, final Sequence<Keyword<?>> definitions, final int fetchSize) {
+        return stream(expression, definitions, fetchSize, 0, Cancellation.cancellation());
+    }
+
+    public Sequence<Record> stream(final Expression expression, final Sequence<Keyword<?>> definitions, final int fetchSize, final int queryTimeout, final Cancellation cancellation) {
+        return stream(expression, RecordLayout.layout(definitions), fetchSize, queryTimeout, cancellation);
+    }
+
+    public Sequence<Record> stream(final Expression expression, final RecordLayout definitions, final int fetchSize, final int queryTimeout, final Cancellation cancellation) {
+        return sequence(new Iterable<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                return closeables.manage(new SqlIterator(connection, mappings, expression, definitions, logger, fetchSize, timeout(queryTimeout), cancellation));
+            }
+        });
+    }
+
+    private int timeout(int queryTimeout) {
+        return queryTimeout > 0 ? queryTimeout : this.queryTimeout;
+    }
+
+    public Sequence<Record> stream(final Definition definition, final int fetchSize) {
+        return get(definition).stream(fetchSize);
     }
 
     public Number add(final Definition definition, final Sequence<Record> records) {
         if (records.isEmpty()) {
             return 0;
         }
-        return update(records.map(insertStatement(grammar, definition)));
+        return update(insertStatements(definition, records));
+    }
+
+    private Sequence<Expression> insertStatements(final Definition definition, final Sequence<Record> records) {
+        return sequence(new Iterable<Expression>() {
+            @Override
+            public Iterator<Expression> iterator() {
+                final Iterator<Record> iterator = records.iterator();
+                return new StatefulIterator<Expression>() {
+                    private Record pending;
+
+                    @Override
+                    protected Expression getNext() throws Exception {
+                        if (pending == null && !iterator.hasNext()) return finished();
+                        Record first = pending != null ? pending : iterator.next();
+                        pending = null;
+                        List<Keyword<?>> keywords = first.keywords().toList();
+                        int size = Math.min(batchRows, batchParameters / Math.max(1, keywords.size()));
+                        List<Record> rows = new ArrayList<Record>();
+                        rows.add(first);
+                        while (rows.size() < size && iterator.hasNext()) {
+                            Record next = iterator.next();
+                            if (!next.keywords().toList().equals(keywords)) {
+                                pending = next;
+                                break;
+                            }
+                            rows.add(next);
+                        }
+                        return rows.size() == 1 ? grammar.insertStatement(definition, first) : grammar.insertStatement(definition, sequence(rows));
+                    }
+                };
+            }
+        });
     }
 
     @Override
@@ -92,6 +225,30 @@ public class SqlRecords extends AbstractRecords implements Queryable<Expression>
         return update(records.map(updateStatement(grammar, definition)));
     }
 
+    /** Puts whose predicate is an equality on all the definition's unique keywords run as batched merge statements */
+    @Override
+    public Number put(final Definition definition, Sequence<? extends Pair<? extends Predicate<? super Record>, Record>> records) {
+        final Sequence<Keyword<?>> keys = Definition.methods.marked(definition, Keywords.unique);
+        if (keys.isEmpty()) return super.put(definition, records);
+        Sequence<Pair<Option<Record>, Pair<? extends Predicate<? super Record>, Record>>> keyed = records.map(pair -> Pair.<Option<Record>, Pair<? extends Predicate<? super Record>, Record>>pair(keyValues(keys, pair.first()), pair)).realise();
+        Sequence<Expression> merges = keyed.filter(keyedPair -> !keyedPair.first().isEmpty()).
+                map(keyedPair -> grammar.mergeStatement(definition, keys, Record.methods.merge(Record.methods.filter(keyedPair.second().second(), definition.fields()), keyedPair.first().get())));
+        Sequence<Pair<? extends Predicate<? super Record>, Record>> others = keyed.filter(keyedPair -> keyedPair.first().isEmpty()).map(Pair::second);
+        return numbers(update(merges), others.isEmpty() ? 0 : super.put(definition, others)).reduce(sum);
+    }
+
+    private static Option<Record> keyValues(Sequence<Keyword<?>> keys, Predicate<?> predicate) {
+        Sequence<? extends Predicate<?>> predicates = predicate instanceof AndPredicate ? ((AndPredicate<?>) predicate).predicates() : sequence(predicate);
+        Record values = Record.constructors.record();
+        for (Predicate<?> part : predicates) {
+            if (!(part instanceof WherePredicate)) return Option.none();
+            WherePredicate<?, ?> where = (WherePredicate<?, ?>) part;
+            if (!(where.callable() instanceof Keyword) || !(where.predicate() instanceof EqualsPredicate)) return Option.none();
+            values = values.set(Unchecked.<Keyword<Object>>cast(where.callable()), ((EqualsPredicate<?>) where.predicate()).value());
+        }
+        return values.keywords().toSet().equals(keys.toSet()) ? Option.some(values) : Option.<Record>none();
+    }
+
     public Number update(final Expression... expressions) {
         return update(sequence(expressions));
     }
@@ -100,24 +257,40 @@ public class SqlRecords extends AbstractRecords implements Queryable<Expression>
         if (expressions.isEmpty()) return 0;
         final Map<String, Object> log = Maps.<String, Object>map(pair(Loggers.TYPE, Loggers.SQL), pair(Loggers.EXPRESSION, expressions));
         long start = System.nanoTime();
+        // Statements used by this call's batches; across calls they come from the connection's cache when it has one
         Map<String, PreparedStatement> statements = new HashMap<>();
+        Map<String, SqlMappings.Binder> binders = new HashMap<>();
         try {
+            Set<PreparedStatement> batched = new LinkedHashSet<>();
+            List<Number> counts = new ArrayList<>();
+            int rows = 0;
+            int parameters = 0;
             for (Expression expression : expressions) {
                 String sql = expression.text();
                 Sequence<Object> values = expression.parameters();
+                int size = values.size();
+
+                if (rows > 0 && (rows >= batchRows || parameters + size > batchParameters)) {
+                    counts.add(executeBatches(batched, log));
+                    batched.clear();
+                    rows = parameters = 0;
+                }
 
                 PreparedStatement statement = statements.get(sql);
-                if (statement == null) statements.put(sql, statement = connection.prepareStatement(sql));
+                if (statement == null) {
+                    statements.put(sql, statement = connection.prepareStatement(sql));
+                    binders.put(sql, mappings.binder(values));
+                }
 
-                mappings.addValues(statement, values);
+                binders.get(sql).bind(statement, values);
                 statement.addBatch();
+                batched.add(statement);
+                rows++;
+                parameters += size;
             }
+            counts.add(executeBatches(batched, log));
 
-            Number rowCount = sequence(statements.values()).map(((Function1<PreparedStatement, Number>) statement -> {
-                Sequence<Number> counts = Numbers.numbers(statement.executeBatch());
-                if (counts.contains(Statement.SUCCESS_NO_INFO)) return statement.getUpdateCount();
-                return counts.filter(not(Statement.SUCCESS_NO_INFO)).reduce(sum);
-            }).time(milliseconds(log))).reduce(sum);
+            Number rowCount = sequence(counts).reduce(sum);
             log.put(Loggers.ROWS, rowCount);
 
             return rowCount;
@@ -135,6 +308,14 @@ public class SqlRecords extends AbstractRecords implements Queryable<Expression>
         }
     }
 
+    private Number executeBatches(Set<PreparedStatement> statements, Map<String, Object> log) {
+        return sequence(statements).map(((Function1<PreparedStatement, Number>) statement -> {
+            Sequence<Number> counts = Numbers.numbers(statement.executeBatch());
+            if (counts.contains(Statement.SUCCESS_NO_INFO)) return statement.getUpdateCount();
+            return counts.filter(not(Statement.SUCCESS_NO_INFO)).reduce(sum);
+        }).time(milliseconds(log))).reduce(sum);
+    }
+
     public Number remove(Definition definition, Predicate<? super Record> predicate) {
         return update(grammar.deleteStatement(definition, Option.some(predicate)));
     }
@@ -5,18 +5,29 @@ import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Keywords;
 import com.googlecode.lazyrecords.Schema;
 import com.googlecode.lazyrecords.sql.grammars.SqlGrammar;
+import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.Sequences;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
 import static com.googlecode.lazyrecords.sql.expressions.AnsiSelectBuilder.from;
 import static com.googlecode.totallylazy.predicates.Predicates.alwaysFalse;
 
+/**
+ * Remembers the tables it has seen or created so only the first exists check per table goes to the database;
+ * define and undefine keep that cache up to date, but tables dropped behind its back are not noticed.
+ * The {@link Keywords#unique} keywords of a definition together make up its natural key (the one SqlRecords.put
+ * merges on), so they get a single composite unique index rather than one each; indexed keywords get one each.
+ */
 public class SqlSchema implements Schema {
     private final SqlRecords records;
     private final SqlGrammar grammar;
+    private final Set<String> defined = ConcurrentHashMap.newKeySet();
 
     public SqlSchema(SqlRecords records, SqlGrammar grammar) {
         this.records = records;
@@ -29,25 +40,38 @@ public class SqlSchema implements Schema {
             return;
         }
         records.update(grammar.createTable(definition));
+        Sequence<Keyword<?>> unique = Definition.methods.marked(definition, Keywords.unique);
+        if (!unique.isEmpty()) records.update(grammar.createIndex(definition, unique, true));
+        for (Keyword<?> indexed : Definition.methods.marked(definition, Keywords.indexed)) {
+            records.update(grammar.createIndex(definition, Sequences.<Keyword<?>>one(indexed), false));
+        }
+        defined.add(key(definition));
     }
 
     public static final Keyword<Integer> one = keyword("1", Integer.class);
 
     @Override
     public boolean exists(Definition definition) {
+        if (defined.contains(key(definition))) return true;
         try {
-            if (metadataExists(definition)) return true;
-            records.query(from(grammar, definition.metadata(Keywords.alias, null)).select(one).filter(alwaysFalse()).build(), Sequences.<Keyword<?>>empty()).realise();
+            if (!metadataExists(definition)) {
+                records.query(from(grammar, definition.metadata(Keywords.alias, null)).select(one).filter(alwaysFalse()).build(), Sequences.<Keyword<?>>empty()).realise();
+            }
+            defined.add(key(definition));
             return true;
         } catch (Exception e) {
             return false;
         }
     }
 
+    private static String key(Definition definition) {
+        return definition.name().toLowerCase(Locale.ROOT);
+    }
+
     private boolean metadataExists(final Definition definition) throws SQLException {
         ResultSet resultSet = null;
         try {
-            resultSet = records.connection().getMetaData().getTables(null, null, definition.name().toUpperCase(), new String[]{"TABLE"});
+            resultSet = records.connection().getMetaData().getTables(null, null, definition.name().toUpperCase(Locale.ROOT), new String[]{"TABLE"});
             return resultSet.next();
         } finally {
             if (resultSet != null) resultSet.close();
@@ -57,6 +81,7 @@ public class SqlSchema implements Schema {
     @Override
     public void undefine(Definition definition) {
         if (exists(definition)) {
+            defined.remove(key(definition));
             records.update(grammar.dropTable(definition));
         }
     }
@@ -22,28 +22,103 @@ import static java.lang.String.format;
 public class SqlSequence<T> extends Sequence<T> implements Expressible {
     private final SqlRecords sqlRecords;
     private final ExpressionBuilder selectBuilder;
+    private final Value<RecordLayout> layout;
     private final Logger logger;
     private final Value<Sequence<T>> data;
     private final Function1<? super Record, ? extends T> callable;
+    private final Option<Comparator<? super Record>> order;
+    private final int queryTimeout;
+    private final Cancellation cancellation;
+
+    /**
+     * A query timeout of 0 uses the default of the SqlRecords. The cancellation is shared with every sequence derived
+     * from this one, so cancelling any of them stops all of their running queries.
+     */
+    public SqlSequence(final SqlRecords records, final ExpressionBuilder selectBuilder, final Logger logger, Function1<? super Record, ? extends T> callable, Option<Comparator<? super Record>> order, int queryTimeout, Cancellation cancellation) {
+        this(records, selectBuilder, Lazy.lazy(() -> RecordLayout.layout(selectBuilder.fields())), logger, callable, order, queryTimeout, cancellation);
+    }
 
-    public SqlSequence(final SqlRecords records, final ExpressionBuilder selectBuilder, final Logger logger, Function1<? super Record, ? extends T> callable) {
+    /** The layout must match the select list of the builder; it is shared with the sequences derived from this one that keep that select list */
+    SqlSequence(final SqlRecords records, final ExpressionBuilder selectBuilder, final RecordLayout layout, final Logger logger, Function1<? super Record, ? extends T> callable) {
+        this(records, selectBuilder, Lazy.lazy(() -> layout), logger, callable, Option.<Comparator<? super Record>>none(), 0, Cancellation.cancellation());
+    }
+
+    private SqlSequence(final SqlRecords records, final ExpressionBuilder selectBuilder, final Value<RecordLayout> layout, final Logger logger, Function1<? super Record, ? extends T> callable, Option<Comparator<? super Record>> order, int queryTimeout, Cancellation cancellation) {
         this.sqlRecords = records;
         this.selectBuilder = selectBuilder;
+        this.layout = layout;
         this.logger = logger;
         this.callable = callable;
+        this.order = order;
+        this.queryTimeout = queryTimeout;
+        this.cancellation = cancellation;
         this.data = Lazy.lazy(() -> execute(selectBuilder));
     }
 
+    public SqlSequence(final SqlRecords records, final ExpressionBuilder selectBuilder, final Logger logger, Function1<? super Record, ? extends T> callable, Option<Comparator<? super Record>> order) {
+        this(records, selectBuilder, logger, callable, order, 0, Cancellation.cancellation());
+    }
+
+    public SqlSequence(final SqlRecords records, final ExpressionBuilder selectBuilder, final Logger logger, Function1<? super Record, ? extends T> callable) {
+        this(records, selectBuilder, logger, callable, Option.<Comparator<? super Record>>none());
+    }
+
     public Iterator<T> iterator() {
         return data.value().iterator();
     }
 
     private Sequence<T> execute(final ExpressionBuilder builder) {
-        return sqlRecords.query(builder.build(), builder.fields()).map(callable);
+        return sqlRecords.query(builder.build(), layout.value(), queryTimeout, cancellation).map(callable);
     }
 
+    /** This query as a forward only sequence that does not memorise its rows, see {@link SqlRecords#stream(Expression, Sequence, int)} */
+    public Sequence<T> stream(final int fetchSize) {
+        return sqlRecords.stream(selectBuilder.build(), layout.value(), fetchSize, queryTimeout, cancellation).map(callable);
+    }
+
+    /** The same query with its statements cancelled by the driver once they run for more than the given number of seconds */
+    public SqlSequence<T> timeout(final int seconds) {
+        return new SqlSequence<T>(sqlRecords, selectBuilder, layout, logger, callable, order, seconds, cancellation);
+    }
+
+    /** The same query, cancelled along with everything else registered with the given cancellation */
+    public SqlSequence<T> cancellation(final Cancellation cancellation) {
+        return new SqlSequence<T>(sqlRecords, selectBuilder, layout, logger, callable, order, queryTimeout, cancellation);
+    }
+
+    /** Stops the running queries of this sequence, freeing the database for a caller that no longer wants the rows */
+    public void cancel() {
+        cancellation.cancel();
+    }
+
+    // Filtering, paging and distinct keep the select list, so the derived sequence reuses this layout
     private SqlSequence<T> build(final ExpressionBuilder builder) {
-        return new SqlSequence<T>(sqlRecords, builder, logger, callable);
+        return new SqlSequence<T>(sqlRecords, builder, layout, logger, callable, order, queryTimeout, cancellation);
+    }
+
+    private SqlSequence<T> select(final ExpressionBuilder builder) {
+        return new SqlSequence<T>(sqlRecords, builder, logger, callable, order, queryTimeout, cancellation);
+    }
+
+    /**
+     * The rows after lastRow in the sortBy order of this sequence, using a predicate on the sort keys (see {@link Keyset})
+     * rather than an offset so the database can seek straight to the page; follow with take for the page size.
+     */
+    public Sequence<T> after(final Record lastRow) {
+        return filter(Unchecked.<Predicate<? super T>>cast(Keyset.after(sortOrder(), lastRow)));
+    }
+
+    public Sequence<T> after(final String cursor) {
+        return after(Keyset.record(sortOrder(), cursor));
+    }
+
+    /** A token for the page after lastRow that can be handed to a client and passed back to {@link #after(String)} */
+    public String cursor(final Record lastRow) {
+        return Keyset.cursor(sortOrder(), lastRow);
+    }
+
+    private Comparator<? super Record> sortOrder() {
+        return order.getOrThrow(new UnsupportedOperationException("Keyset paging needs a sortBy"));
     }
 
     private <S> SqlSequence<S> build(final Keyword<S> keyword) {
@@ -51,7 +126,7 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
             public S call(Record record) throws Exception {
                 return record.get(keyword);
             }
-        });
+        }, Option.<Comparator<? super Record>>none(), queryTimeout, cancellation);
     }
 
     @Override
@@ -63,14 +138,15 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
             return build(Unchecked.<Keyword<S>>cast(raw));
         }
         if (raw instanceof SelectFunction) {
-            return Unchecked.cast(build(selectBuilder.select(((SelectFunction) raw).keywords())));
+            return Unchecked.cast(select(selectBuilder.select(((SelectFunction) raw).keywords())));
         }
         if (raw instanceof ReducingRecordsMapper) {
             ReducingRecordsMapper reducingRecordsMapper = (ReducingRecordsMapper) raw;
-            final SqlSequence<SqlGroup<S>> groups = Unchecked.cast(build(selectBuilder.select(reducingRecordsMapper.aggregates())));
+            final SqlSequence<SqlGroup<S>> groups = Unchecked.cast(select(selectBuilder.select(reducingRecordsMapper.aggregates())));
             return Unchecked.cast(groups);
         }
         logger.log(Maps.map(pair(Loggers.TYPE, Loggers.SQL), pair(Loggers.MESSAGE, "Unsupported function passed to 'map', moving computation to client"), pair(Loggers.FUNCTION, callable)));
+        if (sqlRecords.clientExecution().isParallel()) return sqlRecords.clientExecution().map(clientRows(), callable);
         return super.map(callable);
     }
 
@@ -79,10 +155,13 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
         if (callable instanceof ClientComputation) return super.flatMap(callable);
 
         Function1 raw = (Function1) callable;
-        if (raw instanceof Join) {
-            return Unchecked.cast(build(selectBuilder.join((Join) raw)));
+        if (raw instanceof Join && ((Join) raw).records() instanceof Expressible) {
+            return Unchecked.cast(select(selectBuilder.join((Join) raw)));
         }
         logger.log(Maps.map(pair(Loggers.TYPE, Loggers.SQL), pair(Loggers.MESSAGE, "Unsupported function passed to 'flatMap', moving computation to client"), pair(Loggers.FUNCTION, callable)));
+        if (raw instanceof Join) {
+            return Unchecked.cast(sqlRecords.clientExecution().join(Unchecked.<Iterable<Record>>cast(unmemorisedRows()), (Join) raw));
+        }
         return super.flatMap(callable);
     }
 
@@ -94,6 +173,7 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
             return build(selectBuilder.filter(Unchecked.<Predicate<Record>>cast(predicate)));
         } catch (UnsupportedOperationException ex) {
             logger.log(Maps.map(pair(Loggers.TYPE, Loggers.SQL), pair(Loggers.MESSAGE, "Unsupported predicate passed to 'filter', moving computation to client"), pair(Loggers.PREDICATE, predicate)));
+            if (sqlRecords.clientExecution().isParallel()) return sqlRecords.clientExecution().filter(clientRows(), predicate);
             return super.filter(predicate);
         }
     }
@@ -108,10 +188,12 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
         if (callable instanceof ClientComputation) return super.sortBy(comparator);
 
         try {
-            return build(selectBuilder.orderBy(Unchecked.<Comparator<Record>>cast(comparator)));
+            Comparator<? super Record> recordComparator = Unchecked.cast(comparator);
+            return new SqlSequence<T>(sqlRecords, selectBuilder.orderBy(recordComparator), layout, logger, callable, Option.<Comparator<? super Record>>some(recordComparator), queryTimeout, cancellation);
         } catch (UnsupportedOperationException ex) {
             logger.log(Maps.map(pair(Loggers.TYPE, Loggers.SQL), pair(Loggers.MESSAGE, "Unsupported comparator passed to 'sortBy', moving computation to client"), pair(Loggers.COMPARATOR, comparator)));
-            return super.sortBy(comparator);
+            ClientExecution execution = sqlRecords.clientExecution();
+            return execution.sortBy(execution.spills() ? unmemorisedRows() : clientRows(), comparator);
         }
     }
 
@@ -144,13 +226,16 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
             if (callable instanceof Reducer) {
                 Reducer<?, ?> reducer = (Reducer) callable;
                 ExpressionBuilder builder = selectBuilder.reduce(reducer);
-                if (reducer instanceof Aggregates) return Unchecked.<S>cast(build(builder).head());
-                SqlSequence<Record> records = new SqlSequence<Record>(sqlRecords, builder, logger, Functions.<Record>identity());
+                if (reducer instanceof Aggregates) return Unchecked.<S>cast(select(builder).head());
+                SqlSequence<Record> records = new SqlSequence<Record>(sqlRecords, builder, logger, Functions.<Record>identity(), Option.<Comparator<? super Record>>none(), queryTimeout, cancellation);
                 return (S) records.head().fields().head().second();
             }
         } catch (UnsupportedOperationException ignored) {
         }
         logger.log(Maps.map(pair(Loggers.TYPE, Loggers.SQL), pair(Loggers.MESSAGE, "Unsupported function passed to 'reduce', moving computation to client"), pair(Loggers.FUNCTION, callable)));
+        if (callable instanceof Aggregates && ((Aggregates) callable).mergeable() && sqlRecords.clientExecution().isParallel()) {
+            return (S) sqlRecords.clientExecution().aggregate(Unchecked.<Iterable<Record>>cast(clientRows()), (Aggregates) callable);
+        }
         return super.reduce(callable);
     }
 
@@ -158,7 +243,7 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
     public int size() {
         final ImmutableKeyword<Number> rowCount = keyword("row_count", Number.class);
         final CompoundExpression countExpression = new CompoundExpression(textOnly(format("select count(*) %s from (", rowCount.name())), selectBuilder.build(), textOnly(")"));
-        return sqlRecords.query(countExpression, Sequences.<Keyword<?>>sequence(rowCount)).map(rowCount).head().intValue();
+        return sqlRecords.query(countExpression, Sequences.<Keyword<?>>sequence(rowCount), queryTimeout, cancellation).map(rowCount).head().intValue();
     }
 
     @Override
@@ -191,12 +276,33 @@ public class SqlSequence<T> extends Sequence<T> implements Expressible {
         if (callable instanceof Keyword) {
             final Keyword<K> keyword = (Keyword) callable;
             return Unchecked.cast(new SqlSequence<SqlGroup<K>>(sqlRecords, selectBuilder.groupBy(keyword), logger,
-                    record -> new SqlGroup<K>(record.get(keyword), record)));
+                    record -> new SqlGroup<K>(record.get(keyword), record), Option.<Comparator<? super Record>>none(), queryTimeout, cancellation));
         }
         logger.log(Maps.map(pair(Loggers.TYPE, Loggers.SQL), pair(Loggers.MESSAGE, "Unsupported function passed to 'groupBy', moving computation to client"), pair(Loggers.FUNCTION, callable)));
+        if (sqlRecords.clientExecution().spills()) return sqlRecords.clientExecution().groupBy(unmemorisedRows(), callable);
+        if (sqlRecords.clientExecution().isParallel()) return sqlRecords.clientExecution().groupBy(clientRows(), callable);
         return super.groupBy(callable);
     }
 
+    private Iterable<T> clientRows() {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return SqlSequence.this.iterator();
+            }
+        };
+    }
+
+    // Runs the query again for every pass without keeping the rows, so spilling operators only hold what they need
+    private Iterable<T> unmemorisedRows() {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return execute(selectBuilder).iterator();
+            }
+        };
+    }
+
     public static class SqlGroup<K> extends Group<K, Record> implements Record {
         private final Record record;
 
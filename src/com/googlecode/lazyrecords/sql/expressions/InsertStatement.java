@@ -2,6 +2,7 @@ package com.googlecode.lazyrecords.sql.expressions;
 
 import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.Record;
+import com.googlecode.totallylazy.Sequence;
 
 import static com.googlecode.lazyrecords.sql.expressions.Expressions.expression;
 import static com.googlecode.lazyrecords.sql.expressions.Expressions.formatList;
@@ -24,6 +25,16 @@ public class InsertStatement extends CompoundExpression {
         );
     }
 
+    public InsertStatement(final Definition definition, final Sequence<Record> records) {
+        super(
+                INSERT,
+                textOnly("into").join(Expressions.tableName(definition)),
+                columns(records.head()),
+                VALUES,
+                Expressions.join(records.map(InsertStatement::values), "", ", ", "")
+        );
+    }
+
     public static TextOnlyExpression columns(Record record) {
         return textOnly(names(record.keywords()));
     }
@@ -36,4 +47,8 @@ public class InsertStatement extends CompoundExpression {
     public static InsertStatement insertStatement(final Definition definition, final Record record) {
         return new InsertStatement(definition, record);
     }
+
+    public static InsertStatement insertStatement(final Definition definition, final Sequence<Record> records) {
+        return new InsertStatement(definition, records);
+    }
 }
@@ -0,0 +1,67 @@
+package com.googlecode.lazyrecords.sql.expressions;
+
+import com.googlecode.lazyrecords.Definition;
+import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Record;
+import com.googlecode.totallylazy.Sequence;
+
+import java.util.Map;
+
+import static com.googlecode.lazyrecords.sql.expressions.Expressions.empty;
+import static com.googlecode.lazyrecords.sql.expressions.Expressions.expression;
+import static com.googlecode.lazyrecords.sql.expressions.Expressions.names;
+import static com.googlecode.lazyrecords.sql.expressions.Expressions.textOnly;
+import static com.googlecode.totallylazy.predicates.Predicates.in;
+import static com.googlecode.totallylazy.predicates.Predicates.not;
+import static java.lang.String.format;
+
+/**
+ * merge into table t using (source) s on (t.key = s.key) when matched then update ... when not matched then insert ...
+ * The source is a single row aliased as s with the record's columns, so it differs by dialect.
+ */
+public class MergeStatement extends CompoundExpression {
+    public static final TextOnlyExpression MERGE = textOnly("merge into");
+
+    public MergeStatement(final Definition definition, final Expression source, final Sequence<Keyword<?>> keys, final Sequence<Keyword<?>> columns) {
+        super(
+                MERGE,
+                textOnly("%s t", Expressions.tableName(definition)),
+                textOnly("using"),
+                source,
+                on(keys),
+                whenMatched(columns.filter(not(in(keys)))),
+                whenNotMatched(columns)
+        );
+    }
+
+    public static MergeStatement mergeStatement(final Definition definition, final Expression source, final Sequence<Keyword<?>> keys, final Sequence<Keyword<?>> columns) {
+        return new MergeStatement(definition, source, keys, columns);
+    }
+
+    /** (values (cast(? as type), ...)) as s (columns) */
+    public static AbstractExpression values(Record record, Map<Class, String> mappings) {
+        return expression(format("(values (%s)) as s %s", casts(record.keywords(), mappings).toString(", "), names(record.keywords())),
+                record.valuesFor(record.keywords()));
+    }
+
+    public static Sequence<String> casts(Sequence<Keyword<?>> keywords, final Map<Class, String> mappings) {
+        return keywords.map(keyword -> format("cast(? as %s)", TableDefinition.type(keyword.forClass(), mappings)));
+    }
+
+    public static String column(Keyword<?> keyword) {
+        return Expressions.columnReference(keyword).text();
+    }
+
+    private static TextOnlyExpression on(Sequence<Keyword<?>> keys) {
+        return textOnly("on (%s)", keys.map(MergeStatement::column).map(column -> format("t.%s = s.%s", column, column)).toString(" and "));
+    }
+
+    private static Expression whenMatched(Sequence<Keyword<?>> updating) {
+        if (updating.isEmpty()) return empty();
+        return textOnly("when matched then update set %s", updating.map(MergeStatement::column).map(column -> format("t.%s = s.%s", column, column)).toString(", "));
+    }
+
+    private static TextOnlyExpression whenNotMatched(Sequence<Keyword<?>> columns) {
+        return textOnly("when not matched then insert %s values %s", names(columns), Expressions.formatList(columns.map(MergeStatement::column).map(column -> "s." + column)));
+    }
+}
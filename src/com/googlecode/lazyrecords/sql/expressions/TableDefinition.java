@@ -2,6 +2,7 @@ package com.googlecode.lazyrecords.sql.expressions;
 
 import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.functions.Function1;
 
 import java.util.Map;
@@ -31,6 +32,11 @@ public class TableDefinition extends TextOnlyExpression {
         return mappings.get(aClass);
     }
 
+    public static TextOnlyExpression createIndex(Definition definition, Sequence<Keyword<?>> columns, boolean unique) {
+        String name = format("%s_%s", definition.name(), unique ? "uk" : columns.map(Keyword.functions.name).toString("_") + "_idx");
+        return textOnly(format("create %sindex %s on %s %s", unique ? "unique " : "", quote(name), tableName(definition), Expressions.names(columns)));
+    }
+
     public static CompoundExpression dropTable(Definition definition) {
         return textOnly("drop table").join(tableName(definition));
     }
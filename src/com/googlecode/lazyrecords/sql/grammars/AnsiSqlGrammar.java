@@ -47,6 +47,11 @@ public class AnsiSqlGrammar implements SqlGrammar {
         this.mappings = mappings;
     }
 
+    /** The column datatypes this grammar was created with, for dialects that need them beyond create table */
+    protected Map<Class, String> mappings() {
+        return mappings;
+    }
+
     public AnsiSqlGrammar() {
         this(ColumnDatatypeMappings.defaultMappings());
     }
@@ -301,11 +306,21 @@ public class AnsiSqlGrammar implements SqlGrammar {
         return InsertStatement.insertStatement(definition, record);
     }
 
+    @Override
+    public Expression insertStatement(Definition definition, Sequence<Record> records) {
+        return InsertStatement.insertStatement(definition, records);
+    }
+
     @Override
     public UpdateStatement updateStatement(Definition definition, Predicate<? super Record> predicate, Record record) {
         return AnsiUpdateStatement.updateStatement(Expressions.tableName(definition), setClause(definition, record), whereClause(predicate));
     }
 
+    @Override
+    public Expression mergeStatement(Definition definition, Sequence<Keyword<?>> keys, Record record) {
+        return MergeStatement.mergeStatement(definition, MergeStatement.values(record, mappings), keys, record.keywords());
+    }
+
     public SetClause setClause(Definition definition, Record record) {
         Sequence<Keyword<?>> updatingKeywords = Record.methods.filter(record, definition.fields()).keywords();
         return AnsiSetClause.setClause(updatingKeywords.map(columnReference()), record.valuesFor(updatingKeywords));
@@ -326,4 +341,9 @@ public class AnsiSqlGrammar implements SqlGrammar {
         return TableDefinition.dropTable(definition);
     }
 
+    @Override
+    public Expression createIndex(Definition definition, Sequence<Keyword<?>> columns, boolean unique) {
+        return TableDefinition.createIndex(definition, columns, unique);
+    }
+
 }
@@ -1,9 +1,18 @@
 package com.googlecode.lazyrecords.sql.grammars;
 
+import com.googlecode.lazyrecords.Definition;
+import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Record;
 import com.googlecode.lazyrecords.sql.expressions.*;
+import com.googlecode.totallylazy.Sequence;
 
 import java.util.Map;
 
+import static com.googlecode.lazyrecords.sql.expressions.Expressions.textOnly;
+import static com.googlecode.totallylazy.predicates.Predicates.in;
+import static com.googlecode.totallylazy.predicates.Predicates.not;
+import static java.lang.String.format;
+
 public class MySqlGrammar extends AnsiSqlGrammar {
     public MySqlGrammar(Map<Class, String> mappings) {
         super(mappings);
@@ -13,6 +22,14 @@ public class MySqlGrammar extends AnsiSqlGrammar {
         this(ColumnDatatypeMappings.mysql());
     }
 
+    @Override
+    public Expression mergeStatement(Definition definition, Sequence<Keyword<?>> keys, Record record) {
+        Sequence<Keyword<?>> updating = record.keywords().filter(not(in(keys)));
+        if (updating.isEmpty()) updating = keys.take(1);
+        return InsertStatement.insertStatement(definition, record).
+                join(textOnly("on duplicate key update %s", updating.map(MergeStatement::column).map(column -> format("%s = values(%s)", column, column)).toString(", ")));
+    }
+
     @Override
     public OffsetClause offsetClause(int number) {
         return new MySqlOffsetClause(number);
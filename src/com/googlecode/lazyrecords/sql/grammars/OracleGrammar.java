@@ -1,6 +1,7 @@
 package com.googlecode.lazyrecords.sql.grammars;
 
 import com.googlecode.lazyrecords.Aggregate;
+import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.JoinStringWithSeparator;
 import com.googlecode.lazyrecords.Joiner;
 import com.googlecode.lazyrecords.Keyword;
@@ -9,9 +10,14 @@ import com.googlecode.lazyrecords.Record;
 import com.googlecode.lazyrecords.Using;
 import com.googlecode.lazyrecords.sql.expressions.ColumnReference;
 import com.googlecode.lazyrecords.sql.expressions.CompoundExpression;
+import com.googlecode.lazyrecords.sql.expressions.Expression;
 import com.googlecode.lazyrecords.sql.expressions.Expressions;
+import com.googlecode.lazyrecords.sql.expressions.InsertStatement;
+import com.googlecode.lazyrecords.sql.expressions.MergeStatement;
 import com.googlecode.lazyrecords.sql.expressions.JoinSpecification;
 import com.googlecode.lazyrecords.sql.expressions.ValueExpression;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.Sequences;
 import com.googlecode.totallylazy.functions.Function1;
 import com.googlecode.totallylazy.annotations.multimethod;
 import com.googlecode.totallylazy.multi;
@@ -22,6 +28,7 @@ import static com.googlecode.lazyrecords.sql.expressions.SetFunctionType.setFunc
 import static com.googlecode.lazyrecords.sql.expressions.TextOnlyExpression.textOnly;
 import static com.googlecode.totallylazy.Sequences.sequence;
 import static com.googlecode.totallylazy.Unchecked.cast;
+import static java.lang.String.format;
 
 public class OracleGrammar extends AnsiSqlGrammar {
     public OracleGrammar(Map<Class, String> mappings) {
@@ -41,6 +48,18 @@ public class OracleGrammar extends AnsiSqlGrammar {
         return super.joinSpecification(joiner);
     }
 
+    @Override
+    public Expression insertStatement(Definition definition, Sequence<Record> records) {
+        return new OracleInsertAllStatement(definition, records);
+    }
+
+    @Override
+    public Expression mergeStatement(Definition definition, Sequence<Keyword<?>> keys, Record record) {
+        Sequence<Keyword<?>> columns = record.keywords();
+        String source = format("(select %s from dual) s", MergeStatement.casts(columns, mappings()).zip(columns.map(MergeStatement::column)).map(pair -> pair.first() + " " + pair.second()).toString(", "));
+        return MergeStatement.mergeStatement(definition, Expressions.expression(source, record.valuesFor(columns)), keys, columns);
+    }
+
     private static multi multiOracleVE;
     @Override
     public ValueExpression valueExpression(Function1<? super Record, ?> callable) {
@@ -56,6 +75,14 @@ public class OracleGrammar extends AnsiSqlGrammar {
         return setFunctionType(aggregate.reducer(), aggregate.source());
     }
 
+    public static class OracleInsertAllStatement extends CompoundExpression {
+        public OracleInsertAllStatement(Definition definition, Sequence<Record> records) {
+            super(Sequences.<Expression>one(textOnly("insert all")).
+                    join(records.map(record -> textOnly("into").join(Expressions.tableName(definition)).join(InsertStatement.columns(record)).join(InsertStatement.VALUES).join(InsertStatement.values(record)))).
+                    append(textOnly("select * from dual")));
+        }
+    }
+
     public static class OracleGroupConcatExpression extends CompoundExpression implements ValueExpression {
         private final ColumnReference columnReference;
         private final String separator;
@@ -52,14 +52,22 @@ public interface SqlGrammar {
 
     Expression insertStatement(Definition definition, Record record);
 
+    /** A single statement inserting all the records, which must share the same keywords */
+    Expression insertStatement(Definition definition, Sequence<Record> records);
+
     Expression updateStatement(Definition definition, Predicate<? super Record> predicate, Record record);
 
+    /** Updates the row matching the record on the key columns, or inserts the record if there is none */
+    Expression mergeStatement(Definition definition, Sequence<Keyword<?>> keys, Record record);
+
     Expression deleteStatement(Definition definition, Option<? extends Predicate<? super Record>> predicate);
 
     Expression createTable(Definition definition);
 
     Expression dropTable(Definition definition);
 
+    Expression createIndex(Definition definition, Sequence<Keyword<?>> columns, boolean unique);
+
     AsClause asClause(String alias);
 
     ValueExpression valueExpression(Keyword<?> keyword);
@@ -1,7 +1,6 @@
 package com.googlecode.lazyrecords.sql.mappings;
 
 import com.googlecode.lazyrecords.mappings.StringMappings;
-import com.googlecode.totallylazy.Pair;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.Unchecked;
 
@@ -13,16 +12,18 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.googlecode.totallylazy.Maps.map;
 import static com.googlecode.totallylazy.Sequences.sequence;
 import static com.googlecode.totallylazy.numbers.Numbers.not;
 import static com.googlecode.totallylazy.numbers.Numbers.numbers;
-import static com.googlecode.totallylazy.numbers.Numbers.range;
 import static com.googlecode.totallylazy.numbers.Numbers.sum;
 
 public class SqlMappings {
     private final Map<Class, SqlMapping<Object>> map = map();
+    private final ConcurrentMap<Class, SqlMapping<Object>> objectMappings = new ConcurrentHashMap<Class, SqlMapping<Object>>();
     private final StringMappings stringMappings;
 
     public SqlMappings(StringMappings stringMappings) {
@@ -53,10 +54,9 @@ public class SqlMappings {
     }
 
     public SqlMapping<Object> get(final Class aClass) {
-        if (!map.containsKey(aClass)) {
-            return new ObjectMapping(aClass, stringMappings);
-        }
-        return map.get(aClass);
+        SqlMapping<Object> mapping = map.get(aClass);
+        if (mapping != null) return mapping;
+        return objectMappings.computeIfAbsent(aClass, type -> new ObjectMapping(type, stringMappings));
     }
 
     public Object getValue(final ResultSet resultSet, Integer index, final Class aClass) throws SQLException {
@@ -68,10 +68,40 @@ public class SqlMappings {
     }
 
     public void addValues(PreparedStatement statement, Sequence<Object> values) throws SQLException {
-        for (Pair<Integer, Object> pair : range(1).safeCast(Integer.class).zip(values)) {
-            Integer index = pair.first();
-            Object value = pair.second();
-            get(value == null ? Object.class : value.getClass()).setValue(statement, index, value);
+        int index = 1;
+        for (Object value : values) {
+            get(value == null ? Object.class : value.getClass()).setValue(statement, index++, value);
+        }
+    }
+
+    /** Looks up the mapping for each parameter once so every row or batch of the same statement binds straight from an array */
+    public Binder binder(Sequence<Object> values) {
+        return new Binder(values);
+    }
+
+    public class Binder {
+        private final Class<?>[] classes;
+        private final SqlMapping<Object>[] mappings;
+
+        private Binder(Sequence<Object> values) {
+            classes = new Class<?>[values.size()];
+            mappings = Unchecked.cast(new SqlMapping[classes.length]);
+            int index = 0;
+            for (Object value : values) {
+                classes[index] = value == null ? Object.class : value.getClass();
+                mappings[index] = get(classes[index]);
+                index++;
+            }
+        }
+
+        // A value of another class than the one compiled (usually a null) is looked up as addValues would
+        public void bind(PreparedStatement statement, Sequence<Object> values) throws SQLException {
+            int index = 0;
+            for (Object value : values) {
+                Class<?> aClass = value == null ? Object.class : value.getClass();
+                SqlMapping<Object> mapping = index < classes.length && classes[index] == aClass ? mappings[index] : get(aClass);
+                mapping.setValue(statement, ++index, value);
+            }
         }
     }
 
@@ -1,9 +1,13 @@
 package com.googlecode.lazyrecords.xml;
 
 import com.googlecode.lazyrecords.AliasedKeyword;
+import com.googlecode.lazyrecords.PredicateCompiler;
+import com.googlecode.lazyrecords.RecordLayout;
+import com.googlecode.lazyrecords.SortedSequence;
 import com.googlecode.lazyrecords.ToRecord;
 import com.googlecode.totallylazy.functions.Function2;
 import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.predicates.Predicate;
 import com.googlecode.totallylazy.xml.Xml;
 import com.googlecode.lazyrecords.Keyword;
 import com.googlecode.lazyrecords.Record;
@@ -11,6 +15,7 @@ import com.googlecode.lazyrecords.SourceRecord;
 import com.googlecode.lazyrecords.xml.mappings.XmlMappings;
 import org.w3c.dom.Node;
 
+import java.util.Comparator;
 import java.util.Iterator;
 
 import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
@@ -30,6 +35,34 @@ public class XmlSequence extends Sequence<Record> {
         return nodes.map(asRecord()).iterator();
     }
 
+    @Override
+    public Sequence<Record> filter(Predicate<? super Record> predicate) {
+        return new XmlSequence(nodes.filter(compiler().compile(predicate)), mappings, definitions);
+    }
+
+    @Override
+    public Sequence<Record> sortBy(Comparator<? super Record> comparator) {
+        return SortedSequence.sortedSequence(this, comparator);
+    }
+
+    // Only reads the nodes of the fields the predicate refers to
+    private PredicateCompiler<Node> compiler() {
+        final ToRecord<Node> asRecord = asRecord();
+        return new PredicateCompiler<Node>(RecordLayout.layout(definitions)) {
+            @Override
+            protected Object value(Node node, int ordinal) throws Exception {
+                Keyword<?> keyword = layout.keyword(ordinal);
+                Sequence<Node> values = Xml.selectNodes(node, xpath(keyword));
+                return values.isEmpty() ? null : mappings.get(keyword.forClass()).from(values);
+            }
+
+            @Override
+            protected Record record(Node node) throws Exception {
+                return asRecord.call(node);
+            }
+        };
+    }
+
     private ToRecord<Node> asRecord() {
         return new ToRecord<Node>() {
             public Record call(final Node node) throws Exception {
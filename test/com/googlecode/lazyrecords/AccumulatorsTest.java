@@ -0,0 +1,61 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.matchers.NumberMatcher;
+import org.junit.Test;
+
+import static com.googlecode.lazyrecords.Aggregate.average;
+import static com.googlecode.lazyrecords.Aggregate.count;
+import static com.googlecode.lazyrecords.Aggregate.groupConcat;
+import static com.googlecode.lazyrecords.Aggregate.maximum;
+import static com.googlecode.lazyrecords.Aggregate.sum;
+import static com.googlecode.lazyrecords.Aggregates.to;
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.lazyrecords.Record.constructors.record;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class AccumulatorsTest {
+    private final Keyword<String> name = keyword("name", String.class);
+    private final Keyword<Integer> age = keyword("age", Integer.class);
+    private final Aggregates aggregates = to(sum(age), average(age), count(name), maximum(name));
+
+    @Test
+    public void aggregatesWithoutIntermediateRecords() throws Exception {
+        Record result = aggregates.aggregate(sequence(record(name, "dan", age, 9), record(name, "matt", age, 12), record(name, "bob", age, 11)));
+        assertThat(result.get(sum(age)), NumberMatcher.is(32));
+        assertThat(result.get(average(age)).intValue(), NumberMatcher.is(10));
+        assertThat(result.get(count(name)), NumberMatcher.is(3));
+        assertThat(result.get(maximum(name)), is("matt"));
+    }
+
+    @Test
+    public void canCombinePartialAggregates() throws Exception {
+        Accumulators first = aggregates.accumulators().add(record(name, "dan", age, 9)).add(record(name, "matt", age, 12));
+        Accumulators second = aggregates.accumulators().add(record(name, "bob", age, 11));
+        Record result = first.combine(second).record();
+        assertThat(result, is(aggregates.aggregate(sequence(record(name, "dan", age, 9), record(name, "matt", age, 12), record(name, "bob", age, 11)))));
+        assertThat(result.get(count(name)), NumberMatcher.is(3));
+        assertThat(result.get(sum(age)), NumberMatcher.is(32));
+    }
+
+    @Test
+    public void refusesToCombinePartialResultsOfReducersThatAreNotMergeable() throws Exception {
+        Aggregates concatenated = to(count(name), groupConcat(name));
+        assertThat(aggregates.mergeable(), is(true));
+        assertThat(concatenated.mergeable(), is(false));
+        try {
+            concatenated.accumulators().add(record(name, "dan")).combine(concatenated.accumulators().add(record(name, "matt")));
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void sumsWithoutOverflowing() throws Exception {
+        Keyword<Long> big = keyword("big", Long.class);
+        Record result = to(sum(big)).aggregate(sequence(record(big, Long.MAX_VALUE), record(big, 1L)));
+        assertThat(result.get(sum(big)).toString(), is("9223372036854775808"));
+    }
+}
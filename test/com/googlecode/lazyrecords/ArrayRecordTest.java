@@ -0,0 +1,41 @@
+package com.googlecode.lazyrecords;
+
+import org.junit.Test;
+
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ArrayRecordTest extends RecordContract {
+    private final Keyword<String> firstName = keyword("firstName", String.class);
+    private final Keyword<Integer> age = keyword("age", Integer.class);
+    private final RecordLayout layout = RecordLayout.layout(sequence(firstName, age));
+
+    protected Record createRecord() {
+        return layout.record();
+    }
+
+    @Test
+    public void isEqualToTheEquivalentPersistentRecord() throws Exception {
+        Record record = layout.record(new Object[]{"dan", 12});
+        assertThat(record.equals(Record.constructors.record().set(firstName, "dan").set(age, 12)), is(true));
+        assertThat(record.hashCode(), is(Record.constructors.record().set(firstName, "dan").set(age, 12).hashCode()));
+    }
+
+    @Test
+    public void nonNullRecordsOnlyContainTheNonNullSlots() throws Exception {
+        Record record = layout.nonNullRecord(new Object[]{null, 12});
+        assertThat(record.keywords(), is(sequence(age).<Keyword<?>>unsafeCast()));
+        assertThat(record.get(firstName), is(nullValue()));
+    }
+
+    @Test
+    public void supportsKeywordsOutsideOfTheLayout() throws Exception {
+        Keyword<String> nickname = keyword("nickname", String.class);
+        Record record = layout.record(new Object[]{"dan", 12}).set(nickname, "bodar");
+        assertThat(record.get(nickname), is("bodar"));
+        assertThat(record.keywords().size(), is(3));
+    }
+}
@@ -0,0 +1,96 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Group;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.totallylazy.matchers.NumberMatcher;
+import com.googlecode.totallylazy.numbers.Numbers;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.googlecode.lazyrecords.Aggregate.count;
+import static com.googlecode.lazyrecords.Aggregate.groupConcat;
+import static com.googlecode.lazyrecords.Aggregate.sum;
+import static com.googlecode.lazyrecords.Aggregates.to;
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.lazyrecords.Record.constructors.record;
+import static com.googlecode.totallylazy.predicates.Predicates.where;
+import static com.googlecode.totallylazy.predicates.Predicates.is;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+public class ClientExecutionTest {
+    private final Keyword<Integer> number = keyword("number", Integer.class);
+    private final Keyword<Integer> parity = keyword("parity", Integer.class);
+    private final ClientExecution parallel = ClientExecution.parallel(4, 10);
+    private final Sequence<Record> records = records(1000);
+
+    private Sequence<Record> records(int size) {
+        List<Record> result = new ArrayList<Record>();
+        for (int i = 0; i < size; i++) result.add(record(number, i, parity, i % 2));
+        return sequence(result);
+    }
+
+    @Test
+    public void filtersAndMapsInParallelPreservingOrder() throws Exception {
+        Sequence<Integer> expected = records.filter(where(parity, is(0))).map(number).realise();
+        assertThat(parallel.map(parallel.filter(records, where(parity, is(0))), number).toList(), equalTo(expected.toList()));
+    }
+
+    @Test
+    public void aggregatesInParallel() throws Exception {
+        Record result = parallel.aggregate(records, to(sum(number), count(number)));
+        assertThat(result.get(sum(number)), NumberMatcher.is(499500));
+        assertThat(result.get(count(number)), NumberMatcher.is(1000));
+    }
+
+    @Test
+    public void aggregatesSequentiallyWhenAnAggregateIsNotMergeable() throws Exception {
+        Aggregates aggregates = to(count(number), groupConcat(number));
+        assertThat(parallel.aggregate(records, aggregates), equalTo(aggregates.aggregate(records)));
+    }
+
+    @Test
+    public void groupsInParallelInFirstSeenOrder() throws Exception {
+        Sequence<Group<Integer, Record>> groups = parallel.groupBy(records, parity).realise();
+        assertThat(groups.map(Group::key).toList(), equalTo(records.groupBy(parity).map(Group::key).toList()));
+        assertThat(groups.head().map(number).reduce(Numbers.sum()), NumberMatcher.is(249500));
+    }
+
+    @Test
+    public void sequentialBelowTheThreshold() throws Exception {
+        ClientExecution execution = ClientExecution.parallel(4, 10000);
+        assertThat(execution.filter(records, where(parity, is(1))).size(), equalTo(500));
+        execution.close();
+    }
+
+    @Test
+    public void closingOnlyShutsDownThePoolItCreated() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        ClientExecution.parallel(pool, 10).close();
+        assertThat(pool.isShutdown(), equalTo(false));
+        pool.shutdown();
+
+        ClientExecution owned = ClientExecution.parallel(2, 10);
+        owned.close();
+        try {
+            owned.filter(records, where(parity, is(1))).size();
+            fail("Expected the closed execution to refuse parallel work");
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && !(cause instanceof RejectedExecutionException)) cause = cause.getCause();
+            assertThat(cause instanceof RejectedExecutionException, equalTo(true));
+        }
+    }
+
+    @After
+    public void shutdown() {
+        parallel.close();
+    }
+}
@@ -0,0 +1,35 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Unchecked;
+
+import java.lang.reflect.Proxy;
+
+import static com.googlecode.lazyrecords.Definition.constructors.definition;
+import static com.googlecode.lazyrecords.RecordsContract.People;
+
+// Run by hand: compares the old reflective proxy against the current typed definition
+public class DefinitionDispatchBenchmark {
+    private static final int ITERATIONS = 10000000;
+
+    public static void main(String[] args) {
+        final Definition target = Definition.constructors.definition("people", People.people.fields());
+        People reflective = Unchecked.cast(Proxy.newProxyInstance(Definition.class.getClassLoader(), new Class[]{People.class},
+                (proxy, method, arguments) -> method.invoke(target, arguments)));
+        People typed = definition(People.class);
+
+        for (int run = 0; run < 3; run++) {
+            System.out.println(String.format("reflective proxy: %sns per call", time(reflective)));
+            System.out.println(String.format("typed definition: %sns per call", time(typed)));
+        }
+    }
+
+    private static double time(Definition definition) {
+        long start = System.nanoTime();
+        int hash = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            hash += definition.name().length() + System.identityHashCode(definition.fields()) + System.identityHashCode(definition.metadata());
+        }
+        if (hash == 42) System.out.println();
+        return (System.nanoTime() - start) / (double) ITERATIONS;
+    }
+}
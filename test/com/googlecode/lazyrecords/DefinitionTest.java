@@ -2,11 +2,13 @@ package com.googlecode.lazyrecords;
 
 import org.junit.Test;
 
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
 import static com.googlecode.lazyrecords.RecordsContract.People;
 import static com.googlecode.lazyrecords.RecordsContract.People.*;
 import static com.googlecode.totallylazy.matchers.IterableMatcher.hasExactly;
 import static com.googlecode.totallylazy.matchers.Matchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 
 public class DefinitionTest {
 
@@ -20,4 +22,63 @@ public class DefinitionTest {
     public void canSupplyCustomName() throws Exception {
         assertThat(constructors.definition(People.class, "Foo").name(), is("Foo"));
     }
+
+    @Test
+    public void cachesTheLayoutAndMatchesKeywordsIgnoringCase() throws Exception {
+        assertThat(people.layout() == people.layout(), is(true));
+        assertThat(people.layout().matchKeyword("FIRSTNAME") == (Keyword<?>) firstName, is(true));
+        assertThat(people.layout().matchKeyword("unknown").name(), is("unknown"));
+    }
+
+    @Test
+    public void reusesTheProxyForTheSameInterfaceAndName() throws Exception {
+        assertThat(constructors.definition(People.class) == people, is(true));
+        assertThat(constructors.definition(People.class, "people") == people, is(true));
+        assertThat(constructors.definition(People.class, "Foo") == constructors.definition(People.class, "Foo"), is(true));
+        assertThat(constructors.definition(People.class, "Foo") == people, is(false));
+    }
+
+    @Test
+    public void dispatchesTheDefinitionMethodsToTheBackingDefinition() throws Exception {
+        Definition generic = constructors.definition("people", people.fields());
+        assertThat(people.equals(generic), is(true));
+        assertThat(people.hashCode(), is(generic.hashCode()));
+        assertThat(people.toString(), is("people"));
+        assertThat(people.metadata(), is(generic.metadata()));
+        assertThat(people.as("p").metadata(Keywords.alias).get(), is("p"));
+        assertThat(people.metadata(Keywords.alias, "q").metadata(Keywords.alias).get(), is("q"));
+        assertThat(people.metadata(Record.constructors.record(Keywords.alias, "r")).metadata(Keywords.alias).get(), is("r"));
+    }
+
+    @Test
+    public void fallsBackToReflectionAndRethrowsTheOriginalException() throws Exception {
+        assertThat(people.compareTo(constructors.definition("zebras", people.fields())) < 0, is(true));
+        try {
+            people.compareTo(null);
+            fail("Expected a NullPointerException");
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    @Test
+    public void resolvesTheFieldsOnceTheInterfaceHasInitialisedThem() throws Exception {
+        assertThat(Premature.layoutFailed, is(true));
+        assertThat(Premature.premature.fields(), hasExactly((Keyword<?>) Premature.name));
+        assertThat(Premature.premature.layout().matchKeyword("NAME") == (Keyword<?>) Premature.name, is(true));
+    }
+
+    interface Premature extends Definition {
+        Premature premature = constructors.definition(Premature.class);
+        boolean layoutFailed = layoutFails(premature);
+        Keyword<String> name = keyword("name", String.class);
+    }
+
+    static boolean layoutFails(Definition definition) {
+        try {
+            definition.layout();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
 }
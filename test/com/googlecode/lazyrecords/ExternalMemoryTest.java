@@ -0,0 +1,94 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Group;
+import com.googlecode.totallylazy.Sequence;
+import com.googlecode.lazyrecords.memory.MemoryRecords;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.lazyrecords.Record.constructors.record;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.comparators.Comparators.descending;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ExternalMemoryTest {
+    private final Keyword<Integer> number = keyword("number", Integer.class);
+    private final Keyword<String> name = keyword("name", String.class);
+    private final Keyword<String> nickname = keyword("nickname", String.class);
+    private final Keyword<Date> created = keyword("created", Date.class);
+
+    private Sequence<Record> records(int size) {
+        List<Record> result = new ArrayList<Record>();
+        for (int i = 0; i < size; i++) result.add(record(number, (i * 7919) % size, name, "name" + (i % 17), nickname, i % 3 == 0 ? null : "nick" + i, created, new Date(i)));
+        return sequence(result);
+    }
+
+    @Test
+    public void sortsBySpillingSortedRuns() throws Exception {
+        File directory = Files.createTempDirectory("spill").toFile();
+        Sequence<Record> records = records(1000);
+        Sequence<Record> sorted = ExternalMemory.externalMemory(64, directory).sortBy(records, descending(number));
+        assertThat(sorted.toList(), is(records.sortBy(descending(number)).toList()));
+        assertThat(directory.list().length, is(0));
+    }
+
+    @Test
+    public void sortIsStable() throws Exception {
+        Sequence<Record> records = records(500);
+        Comparator<Record> lastDigit = (a, b) -> Integer.compare(a.get(number) % 10, b.get(number) % 10);
+        assertThat(ExternalMemory.externalMemory(10).sortBy(records, lastDigit).toList(), is(records.sortBy(lastDigit).toList()));
+    }
+
+    @Test
+    public void groupsBySpillingHashPartitions() throws Exception {
+        File directory = Files.createTempDirectory("spill").toFile();
+        Sequence<Record> records = records(1000);
+        Map<Object, List<Record>> expected = new HashMap<Object, List<Record>>();
+        for (Group<String, Record> group : records.groupBy(name)) expected.put(group.key(), group.toList());
+
+        Map<Object, List<Record>> actual = new HashMap<Object, List<Record>>();
+        for (Group<String, Record> group : ExternalMemory.externalMemory(100, directory).groupBy(records, name)) actual.put(group.key(), group.toList());
+
+        assertThat(actual, is(expected));
+        assertThat(directory.list().length, is(0));
+    }
+
+    @Test
+    public void spillsRecordsFromARecordsImplementation() throws Exception {
+        File directory = Files.createTempDirectory("spill").toFile();
+        Definition numbers = Definition.constructors.definition("numbers", number, name, nickname, created);
+        MemoryRecords memory = new MemoryRecords();
+        memory.add(numbers, records(300));
+        Sequence<Record> rows = memory.get(numbers);
+
+        Sequence<Record> sorted = ExternalMemory.externalMemory(32, directory).sortBy(rows, descending(number));
+        assertThat(sorted.map(number).toList(), is(rows.sortBy(descending(number)).map(number).toList()));
+
+        Map<Object, Integer> sizes = new HashMap<Object, Integer>();
+        for (Group<String, Record> group : ExternalMemory.externalMemory(32, directory).groupBy(rows, name)) sizes.put(group.key(), group.size());
+        assertThat(sizes.size(), is(17));
+        assertThat(directory.list().length, is(0));
+    }
+
+    @Test
+    public void removesTheSpillFilesWhenAnAbandonedIterationIsClosed() throws Exception {
+        File directory = Files.createTempDirectory("spill").toFile();
+        Iterator<Record> sorted = ExternalMemory.externalMemory(64, directory).sortBy(records(1000), descending(number)).iterator();
+        sorted.next();
+        assertThat(directory.list().length > 0, is(true));
+        ((Closeable) sorted).close();
+        assertThat(directory.list().length, is(0));
+    }
+}
@@ -0,0 +1,116 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.lazyrecords.memory.MemoryRecords;
+import com.googlecode.totallylazy.Sequence;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.googlecode.lazyrecords.Definition.constructors.definition;
+import static com.googlecode.lazyrecords.InnerJoin.innerJoin;
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.lazyrecords.On.on;
+import static com.googlecode.lazyrecords.OuterJoin.outerJoin;
+import static com.googlecode.lazyrecords.Record.constructors.record;
+import static com.googlecode.lazyrecords.Record.functions.merge;
+import static com.googlecode.lazyrecords.Using.using;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class JoinTest {
+    private final Keyword<Integer> id = keyword("id", Integer.class);
+    private final Keyword<Integer> ownerId = keyword("ownerId", Integer.class);
+    private final Keyword<String> name = keyword("name", String.class);
+    private final Keyword<String> item = keyword("item", String.class);
+
+    private final Sequence<Record> owners = owners(50);
+    private final Sequence<Record> items = items(200, 60);
+
+    private Sequence<Record> owners(int size) {
+        List<Record> result = new ArrayList<Record>();
+        for (int i = 0; i < size; i++) result.add(record(id, i, name, "owner" + i));
+        return sequence(result);
+    }
+
+    private Sequence<Record> items(int size, int owners) {
+        List<Record> result = new ArrayList<Record>();
+        for (int i = 0; i < size; i++) result.add(record(ownerId, (i * 7) % owners, item, "item" + i));
+        return sequence(result);
+    }
+
+    private Sequence<Record> nestedLoop(Sequence<Record> left, Sequence<Record> right, Joiner joiner, boolean outer) throws Exception {
+        List<Record> result = new ArrayList<Record>();
+        for (Record record : left) {
+            Sequence<Record> matches = right.filter(joiner.call(record)).realise();
+            if (outer && matches.isEmpty()) result.add(record);
+            for (Record match : matches) result.add(merge(record).call(match));
+        }
+        return sequence(result);
+    }
+
+    @Test
+    public void hashJoinsGiveTheSameRowsInTheSameOrderAsANestedLoop() throws Exception {
+        assertThat(owners.flatMap(innerJoin(items, on(id, ownerId))).toList(), is(nestedLoop(owners, items, on(id, ownerId), false).toList()));
+        assertThat(owners.flatMap(outerJoin(items, on(id, ownerId))).toList(), is(nestedLoop(owners, items, on(id, ownerId), true).toList()));
+        assertThat(innerJoin(items, on(id, ownerId)).hashJoin(owners).toList(), is(nestedLoop(owners, items, on(id, ownerId), false).toList()));
+        assertThat(outerJoin(items, on(id, ownerId)).hashJoin(owners).toList(), is(nestedLoop(owners, items, on(id, ownerId), true).toList()));
+    }
+
+    @Test
+    public void hashingTheRowsInsteadOfTheRecordsGivesTheSameRowsInTheSameOrder() throws Exception {
+        Sequence<Record> few = owners.filter(record -> record.get(id) % 10 == 3);
+        assertThat(innerJoin(items, on(id, ownerId)).hashJoin(few, true).toList(), is(nestedLoop(few, items, on(id, ownerId), false).toList()));
+        assertThat(outerJoin(items, on(id, ownerId)).hashJoin(owners, true).toList(), is(nestedLoop(owners, items, on(id, ownerId), true).toList()));
+        Sequence<Record> scores = sequence(record(id, 1, item, "a"), record(id, 1, item, "b"), record(id, 3, item, "c"));
+        assertThat(innerJoin(scores, using(id)).hashJoin(owners, true).toList(), is(nestedLoop(owners, scores, using(id), false).toList()));
+    }
+
+    @Test
+    public void aReusedJoinSeesTheCurrentRecords() throws Exception {
+        final List<Record> current = new ArrayList<Record>();
+        current.add(record(ownerId, 1, item, "old"));
+        Sequence<Record> live = new Sequence<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                return current.iterator();
+            }
+        };
+        Join join = innerJoin(live, on(id, ownerId));
+        Sequence<Record> joined = join.hashJoin(owners.take(2));
+        assertThat(joined.map(item).toList(), is(Arrays.asList("old")));
+        current.set(0, record(ownerId, 1, item, "new"));
+        assertThat(joined.map(item).toList(), is(Arrays.asList("new")));
+        assertThat(owners.take(2).flatMap(join).map(item).toList(), is(Arrays.asList("new")));
+    }
+
+    @Test
+    public void supportsUsing() throws Exception {
+        Sequence<Record> scores = sequence(record(id, 1, item, "a"), record(id, 1, item, "b"), record(id, 3, item, "c"));
+        assertThat(owners.flatMap(innerJoin(scores, using(id))).toList(), is(nestedLoop(owners, scores, using(id), false).toList()));
+    }
+
+    @Test
+    public void spillsRecordsFromARecordsImplementation() throws Exception {
+        Definition ownersDefinition = definition("owners", id, name);
+        Definition itemsDefinition = definition("items", ownerId, item);
+        MemoryRecords memory = new MemoryRecords();
+        memory.add(ownersDefinition, owners(100));
+        memory.add(itemsDefinition, items(1000, 80));
+        Sequence<Record> joined = ExternalMemory.externalMemory(16).join(memory.get(ownersDefinition), innerJoin(memory.get(itemsDefinition), on(id, ownerId)));
+        Sequence<Record> expected = nestedLoop(owners(100), items(1000, 80), on(id, ownerId), false);
+        assertThat(new HashSet<Record>(joined.toList()), is(new HashSet<Record>(expected.toList())));
+    }
+
+    @Test
+    public void spillsBothSidesWhenTheJoinedRecordsDoNotFitInMemory() throws Exception {
+        Sequence<Record> joined = ExternalMemory.externalMemory(16).join(owners(100), outerJoin(items(1000, 80), on(id, ownerId)));
+        Sequence<Record> expected = nestedLoop(owners(100), items(1000, 80), on(id, ownerId), true);
+        assertThat(joined.size(), is(expected.size()));
+        assertThat(new HashSet<Record>(joined.toList()), is(new HashSet<Record>(expected.toList())));
+    }
+}
@@ -13,4 +13,10 @@ public class KeywordsTest {
     public void supportsToString() throws Exception {
         assertThat(where(keyword("Some column", Integer.class), Predicates.is(1)).toString(), is("where Some column is 1"));
     }
+
+    @Test
+    public void internsKeywordsWithTheSameNameAndType() throws Exception {
+        assertThat(keyword("name", String.class) == keyword("name", String.class), is(true));
+        assertThat(keyword("name", String.class) == keyword("name", Integer.class), is(false));
+    }
 }
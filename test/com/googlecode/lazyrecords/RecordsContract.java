@@ -183,6 +183,15 @@ public abstract class RecordsContract<T extends Records> {
         assertThat(records.get(people).filter(all()).size(), NumberMatcher.is(3));
     }
 
+    @Test
+    public void supportsReadingInBatches() throws Exception {
+        Sequence<RecordBatch> batches = records.batches(people, 2).realise();
+        assertThat(batches.map(RecordBatch::size), hasExactly(2, 1));
+        Sequence<Record> all = batches.flatMap(RecordBatch::records).sortBy(ascending(age)).realise();
+        assertThat(all.map(firstName), hasExactly("dan", "Bob", "matt"));
+        assertThat(all.map(dob), hasExactly(date(1977, 1, 10), date(1976, 1, 10), date(1975, 1, 10)));
+    }
+
     @Test
     public void supportsCorrectlySortingNumbers() throws Exception {
         records.add(people,
@@ -0,0 +1,51 @@
+package com.googlecode.lazyrecords;
+
+import com.googlecode.totallylazy.Sequence;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.lazyrecords.Record.constructors.record;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.comparators.Comparators.descending;
+import static com.googlecode.totallylazy.predicates.Predicates.greaterThan;
+import static com.googlecode.totallylazy.predicates.Predicates.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+public class SortedSequenceTest {
+    private final Keyword<Integer> number = keyword("number", Integer.class);
+    private final Keyword<Integer> id = keyword("id", Integer.class);
+
+    private Sequence<Record> records(int size) {
+        List<Record> result = new ArrayList<Record>();
+        for (int i = 0; i < size; i++) result.add(record(id, i, number, (i * 31) % 97));
+        return sequence(result);
+    }
+
+    @Test
+    public void takesTheTopRowsLikeAFullStableSort() throws Exception {
+        Sequence<Record> records = records(1000);
+        Comparator<Record> tens = (a, b) -> Integer.compare(a.get(number) / 10, b.get(number) / 10);
+        assertThat(SortedSequence.sortedSequence(records, tens).take(50).toList(), is(records.sortBy(tens).take(50).toList()));
+        assertThat(SortedSequence.sortedSequence(records, descending(number)).take(5).toList(), is(records.sortBy(descending(number)).take(5).toList()));
+    }
+
+    @Test
+    public void headIsTheFirstSortedRow() throws Exception {
+        Sequence<Record> records = records(200);
+        assertThat(SortedSequence.sortedSequence(records, descending(number)).head(), is(records.sortBy(descending(number)).head()));
+        assertThat(SortedSequence.sortedSequence(sequence(new ArrayList<Record>()), descending(number)).headOption().isEmpty(), is(true));
+    }
+
+    @Test
+    public void sortableSequencesKeepUsingTopN() throws Exception {
+        Sequence<Record> sorted = SortedSequence.sortable(records(100)).filter(where(id, greaterThan(40))).sortBy(descending(number));
+        assertThat(sorted, instanceOf(SortedSequence.class));
+        assertThat(sorted.take(3).toList(), is(records(100).filter(where(id, greaterThan(40))).sortBy(descending(number)).take(3).toList()));
+    }
+}
@@ -0,0 +1,89 @@
+package com.googlecode.lazyrecords.lucene;
+
+import com.googlecode.lazyrecords.Definition;
+import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.totallylazy.Sequences;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.lazyrecords.Definition.constructors.definition;
+import static com.googlecode.lazyrecords.Grammar.update;
+import static com.googlecode.lazyrecords.Grammar.using;
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.lazyrecords.Record.constructors.record;
+import static com.googlecode.lazyrecords.lucene.NearRealTimeStorage.nearRealTimeStorage;
+import static com.googlecode.lazyrecords.lucene.PartitionedIndex.methods.indexWriter;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class NearRealTimeStorageTest {
+    @Test
+    public void writesBecomeVisibleWithoutACommit() throws Exception {
+        IndexWriter writer = indexWriter(new RAMDirectory());
+        NearRealTimeStorage storage = nearRealTimeStorage(writer, 0.1, TimeUnit.MINUTES.toMillis(1), 1000);
+        storage.add(Sequences.<Document>sequence(new Document()));
+        storage.flush();
+        storage.awaitVisible();
+        assertThat(storage.count(Lucene.all()), is(1));
+        assertThat(writer.hasUncommittedChanges(), is(true));
+        storage.close();
+        writer.close();
+    }
+
+    @Test
+    public void commitsOnceEnoughWritesArePending() throws Exception {
+        IndexWriter writer = indexWriter(new RAMDirectory());
+        NearRealTimeStorage storage = nearRealTimeStorage(writer, 0.1, TimeUnit.MINUTES.toMillis(1), 2);
+        storage.add(Sequences.<Document>sequence(new Document()));
+        storage.flush();
+        storage.add(Sequences.<Document>sequence(new Document()));
+        storage.flush();
+        assertThat(storage.awaitCommit(5, TimeUnit.SECONDS), is(true));
+        assertThat(writer.hasUncommittedChanges(), is(false));
+        assertThat(storage.count(Lucene.all()), is(2));
+        storage.close();
+        writer.close();
+    }
+
+    @Test
+    public void queuesOneCommitAtATimeHoweverManyFlushesPassTheThreshold() throws Exception {
+        Directory directory = new RAMDirectory();
+        IndexWriter writer = indexWriter(directory);
+        NearRealTimeStorage storage = nearRealTimeStorage(writer, 0.1, TimeUnit.MINUTES.toMillis(1), 10);
+        long before = SegmentInfos.getLastCommitGeneration(directory);
+        for (int i = 0; i < 1000; i++) {
+            storage.add(Sequences.<Document>sequence(new Document()));
+            storage.flush();
+        }
+        assertThat(storage.awaitCommit(5, TimeUnit.SECONDS), is(true));
+        long commits = SegmentInfos.getLastCommitGeneration(directory) - before;
+        assertThat(commits, is(greaterThan(0L)));
+        assertThat(commits, is(lessThanOrEqualTo(100L)));
+        storage.close();
+        writer.close();
+    }
+
+    @Test
+    public void putsAndRemovesSeeTheirOwnEarlierWrites() throws Exception {
+        IndexWriter writer = indexWriter(new RAMDirectory());
+        NearRealTimeStorage storage = nearRealTimeStorage(writer, 60, TimeUnit.MINUTES.toMillis(1), 1000);
+        LuceneRecords records = new LuceneRecords(storage);
+        Keyword<Integer> id = keyword("id", Integer.class);
+        Keyword<String> name = keyword("name", String.class);
+        Definition things = definition("things", id, name);
+        records.put(things, update(using(id), record(id, 1, name, "first")));
+        records.put(things, update(using(id), record(id, 1, name, "second")));
+        assertThat(records.remove(things).intValue(), is(1));
+        records.close();
+        storage.close();
+        writer.close();
+    }
+}
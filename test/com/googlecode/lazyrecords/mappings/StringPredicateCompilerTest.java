@@ -0,0 +1,63 @@
+package com.googlecode.lazyrecords.mappings;
+
+import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Record;
+import com.googlecode.lazyrecords.RecordLayout;
+import com.googlecode.totallylazy.functions.Function1;
+import com.googlecode.totallylazy.predicates.Predicates;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.predicates.Predicates.and;
+import static com.googlecode.totallylazy.predicates.Predicates.between;
+import static com.googlecode.totallylazy.predicates.Predicates.greaterThan;
+import static com.googlecode.totallylazy.predicates.Predicates.in;
+import static com.googlecode.totallylazy.predicates.Predicates.not;
+import static com.googlecode.totallylazy.predicates.Predicates.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class StringPredicateCompilerTest {
+    private final Keyword<String> name = keyword("name", String.class);
+    private final Keyword<Integer> age = keyword("age", Integer.class);
+    private final StringMappings mappings = new StringMappings();
+    private final StringPredicateCompiler<Map<String, String>> compiler = new StringPredicateCompiler<Map<String, String>>(RecordLayout.layout(sequence(name, age)), mappings) {
+        @Override
+        protected String raw(Map<String, String> row, int ordinal) {
+            return row.get(layout.keyword(ordinal).name());
+        }
+
+        @Override
+        protected Record record(Map<String, String> row) throws Exception {
+            return Record.constructors.record(name, row.get("name"), age, mappings.toValue(Integer.class, row.get("age")));
+        }
+    };
+
+    @Test
+    public void matchesStoredStrings() throws Exception {
+        Map<String, String> dan = row("dan", 9);
+        assertThat(compiler.compile(where(name, Predicates.is("dan"))).matches(dan), is(true));
+        assertThat(compiler.compile(where(age, greaterThan(10))).matches(dan), is(false));
+        assertThat(compiler.compile(where(age, greaterThan(-10))).matches(dan), is(true));
+        assertThat(compiler.compile(where(age, between(9, 12))).matches(dan), is(true));
+        assertThat(compiler.compile(where(age, in(1, 2, 3))).matches(dan), is(false));
+        assertThat(compiler.compile(and(where(name, Predicates.is("dan")), where(age, not(Predicates.is(9))))).matches(dan), is(false));
+    }
+
+    @Test
+    public void fallsBackToTheRecordForOtherPredicates() throws Exception {
+        Function1<Record, String> firstName = record -> record.get(name);
+        assertThat(compiler.compile(where(firstName, Predicates.is("dan"))).matches(row("dan", 9)), is(true));
+    }
+
+    private Map<String, String> row(String name, int age) {
+        Map<String, String> row = new HashMap<String, String>();
+        row.put("name", name);
+        row.put("age", mappings.toString(Integer.class, age));
+        return row;
+    }
+}
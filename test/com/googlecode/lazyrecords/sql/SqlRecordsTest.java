@@ -1,9 +1,12 @@
 package com.googlecode.lazyrecords.sql;
 
 import com.googlecode.lazyrecords.Aggregate;
+import com.googlecode.lazyrecords.ClientExecution;
 import com.googlecode.lazyrecords.Definition;
 import com.googlecode.lazyrecords.Grammar;
 import com.googlecode.lazyrecords.ImmutableKeyword;
+import com.googlecode.lazyrecords.Keyword;
+import com.googlecode.lazyrecords.Keywords;
 import com.googlecode.lazyrecords.Logger;
 import com.googlecode.lazyrecords.Record;
 import com.googlecode.lazyrecords.Records;
@@ -13,6 +16,8 @@ import com.googlecode.lazyrecords.Transaction;
 import com.googlecode.lazyrecords.sql.grammars.AnsiSqlGrammar;
 import com.googlecode.lazyrecords.sql.grammars.SqlGrammar;
 import com.googlecode.lazyrecords.sql.mappings.SqlMappings;
+import com.googlecode.totallylazy.predicates.LogicalPredicate;
+import com.googlecode.totallylazy.predicates.Predicate;
 import com.googlecode.totallylazy.predicates.Predicates;
 import com.googlecode.totallylazy.Sequence;
 import com.googlecode.totallylazy.matchers.Matchers;
@@ -25,10 +30,18 @@ import org.junit.Test;
 
 import java.net.URI;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import static com.googlecode.lazyrecords.Definition.constructors.definition;
+import static com.googlecode.lazyrecords.Grammar.ascending;
+import static com.googlecode.lazyrecords.Grammar.descending;
 import static com.googlecode.lazyrecords.Grammar.groupConcat;
 import static com.googlecode.lazyrecords.Grammar.to;
 import static com.googlecode.lazyrecords.Keyword.constructors.keyword;
@@ -37,24 +50,33 @@ import static com.googlecode.lazyrecords.Record.methods.update;
 import static com.googlecode.lazyrecords.RecordsContract.Books.books;
 import static com.googlecode.lazyrecords.RecordsContract.Books.inPrint;
 import static com.googlecode.lazyrecords.RecordsContract.Books.isbn;
+import static com.googlecode.lazyrecords.RecordsContract.Books.title;
+import static com.googlecode.lazyrecords.RecordsContract.zenIsbn;
 import static com.googlecode.lazyrecords.RecordsContract.People.age;
 import static com.googlecode.lazyrecords.RecordsContract.People.firstName;
 import static com.googlecode.lazyrecords.RecordsContract.People.lastName;
 import static com.googlecode.lazyrecords.RecordsContract.People.people;
 import static com.googlecode.lazyrecords.Using.using;
 import static com.googlecode.lazyrecords.sql.grammars.ColumnDatatypeMappings.hsql;
+import static com.googlecode.totallylazy.Closeables.safeClose;
 import static com.googlecode.totallylazy.Pair.pair;
 import static com.googlecode.totallylazy.predicates.Predicates.all;
 import static com.googlecode.totallylazy.predicates.Predicates.always;
 import static com.googlecode.totallylazy.predicates.Predicates.in;
 import static com.googlecode.totallylazy.predicates.Predicates.where;
 import static com.googlecode.totallylazy.Sequences.empty;
+import static com.googlecode.totallylazy.Sequences.sequence;
+import static com.googlecode.totallylazy.comparators.Comparators.comparators;
 import static com.googlecode.totallylazy.matchers.IterableMatcher.hasExactly;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class SqlRecordsTest extends RecordsContract<Records> {
     private static JDBCDataSource dataSource;
@@ -89,6 +111,138 @@ public class SqlRecordsTest extends RecordsContract<Records> {
         return new SqlRecords(connection, new SqlMappings(), grammar, logger);
     }
 
+    @Test
+    public void canStreamRowsWithoutMemorisingThem() throws Exception {
+        Sequence<Record> streamed = sqlRecords(logger).stream(people, 1);
+        assertThat(streamed.map(firstName).toList(), containsInAnyOrder("dan", "matt", "Bob"));
+        assertThat(streamed.toList().size(), is(3));
+        SqlSequence<Record> young = (SqlSequence<Record>) sqlRecords(logger).get(people).filter(where(age, Predicates.lessThan(12)));
+        assertThat(young.stream(1).map(firstName).toList(), containsInAnyOrder("dan", "Bob"));
+    }
+
+    @Test
+    public void insertsInMultiRowStatementsCutAtTheBatchLimits() throws Exception {
+        SqlRecords batchingRecords = new SqlRecords(connection, new SqlMappings(), grammar, logger, ClientExecution.sequential(), 4, 7);
+        List<Record> added = new ArrayList<Record>();
+        for (int i = 0; i < 25; i++) added.add(i % 10 == 0 ? record(firstName, "first" + i) : record(firstName, "first" + i, age, i));
+        assertThat(batchingRecords.add(people, sequence(added)), NumberMatcher.is(25));
+        assertThat(batchingRecords.get(people).size(), NumberMatcher.is(28));
+        assertThat(batchingRecords.get(people).filter(where(firstName, Predicates.is("first20"))).head().get(age), nullValue());
+        assertThat(batchingRecords.get(people).filter(where(firstName, Predicates.is("first24"))).head().get(age), is(24));
+    }
+
+    @Test
+    public void putsOnUniqueKeywordsWithAMergeStatement() throws Exception {
+        Definition uniqueBooks = definition(books.name(), isbn.metadata(Keywords.unique, true), title);
+        URI newIsbn = URI.create("urn:isbn:0192861980");
+        assertThat(sqlRecords(logger).put(uniqueBooks, update(using(isbn), record(isbn, zenIsbn, title, "Zen"), record(isbn, newIsbn, title, "New"))), NumberMatcher.is(2));
+        assertThat(log(), containsString("merge into"));
+        assertThat(records.get(books).filter(where(isbn, Predicates.is(zenIsbn))).map(title), hasExactly("Zen"));
+        assertThat(records.get(books).filter(where(isbn, Predicates.is(newIsbn))).map(title), hasExactly("New"));
+        assertThat(records.get(books).size(), NumberMatcher.is(4));
+    }
+
+    @Test
+    public void pagesAfterTheLastRowOrACursorInsteadOfUsingAnOffset() throws Exception {
+        SqlSequence<Record> sorted = (SqlSequence<Record>) sqlRecords(logger).get(people).sortBy(comparators(descending(age), ascending(firstName)));
+        Record matt = sorted.head();
+        assertThat(sorted.after(matt).take(1).map(firstName), hasExactly("Bob"));
+        String cursor = sorted.cursor(sorted.after(matt).head());
+        assertThat(sorted.after(cursor).map(firstName), hasExactly("dan"));
+        assertThat(sorted.after(sorted.cursor(sorted.last())).isEmpty(), is(true));
+    }
+
+    @Test
+    public void reusesCachedPreparedStatements() throws Exception {
+        CachingConnection cachingConnection = CachingConnection.cachingConnection(connection, 16);
+        SqlRecords cachingRecords = new SqlRecords(cachingConnection, new SqlMappings(), grammar, logger);
+        assertThat(cachingRecords.get(people).toList().size(), is(3));
+        assertThat(cachingRecords.get(people).toList().size(), is(3));
+        assertThat(cachingConnection.misses(), is(1L));
+        assertThat(cachingConnection.hits(), is(1L));
+    }
+
+    @Test
+    public void sharesTheStatementCacheBetweenUpdatesAndQueries() throws Exception {
+        SqlRecords cachingRecords = SqlRecords.cachingStatements(connection, new SqlMappings(), grammar, logger, 16);
+        CachingConnection cachingConnection = (CachingConnection) cachingRecords.connection();
+        cachingRecords.add(people, record(firstName, "first", age, 1));
+        cachingRecords.add(people, record(firstName, "second", age, 2));
+        assertThat(cachingConnection.hits(), is(1L));
+        assertThat(cachingRecords.get(people).toList().size(), is(5));
+        assertThat(cachingRecords.get(people).toList().size(), is(5));
+        assertThat(cachingConnection.hits(), is(2L));
+    }
+
+    @Test
+    public void resetsCachedStatementsAndIgnoresCancelsOnceTheyAreHandedBack() throws Exception {
+        CachingConnection cachingConnection = CachingConnection.cachingConnection(connection, 16);
+        String sql = "select 1 from INFORMATION_SCHEMA.SYSTEM_USERS";
+        PreparedStatement first = cachingConnection.prepareStatement(sql);
+        first.setQueryTimeout(1);
+        first.setMaxRows(1);
+        ResultSet abandoned = first.executeQuery();
+        first.close();
+        assertThat(abandoned.isClosed(), is(true));
+        PreparedStatement second = cachingConnection.prepareStatement(sql);
+        assertThat(cachingConnection.hits(), is(1L));
+        assertThat(second.getQueryTimeout(), is(0));
+        assertThat(second.getMaxRows(), is(0));
+        first.cancel();
+        ResultSet resultSet = second.executeQuery();
+        assertThat(resultSet.next(), is(true));
+        resultSet.close();
+        second.close();
+    }
+
+    @Test
+    public void scansRangePartitionsInParallel() throws Exception {
+        records.add(people, record(firstName, "nobody"));
+        ParallelScan scan = ParallelScan.parallelScan(dataSource, grammar, logger, 3);
+        assertThat(scan.scan(people, age).map(firstName), containsInAnyOrder("dan", "matt", "Bob", "nobody"));
+        assertThat(scan.scan(people, always(), age, true).map(firstName), hasExactly("dan", "Bob", "matt", "nobody"));
+        assertThat(scan.scan(people, where(age, Predicates.greaterThan(9)), age, true).map(firstName), hasExactly("Bob", "matt"));
+    }
+
+    @Test
+    public void parallelScansFailFastOnClientPredicatesAndStopWhenTheScanIsClosed() throws Exception {
+        ParallelScan scan = ParallelScan.parallelScan(dataSource, grammar, logger, 3);
+        Predicate<Record> clientOnly = new LogicalPredicate<Record>() {
+            @Override
+            public boolean matches(Record other) {
+                return true;
+            }
+        };
+        try {
+            scan.scan(people, clientOnly, age, false).toList();
+            fail("Expected the scan to refuse a predicate that can not be run in SQL");
+        } catch (UnsupportedOperationException expected) {
+        }
+        Iterator<Record> abandoned = scan.scan(people, age).iterator();
+        abandoned.next();
+        scan.close();
+        try {
+            abandoned.hasNext();
+            fail("Expected reading on from a closed scan to fail rather than look finished");
+        } catch (CancellationException expected) {
+        }
+        assertThat(scan.scan(people, age).toList().size(), is(3));
+    }
+
+    @Test
+    public void boundsQueriesWithATimeoutAndStopsThemWhenCancelled() throws Exception {
+        SqlSequence<Record> everyone = sqlRecords(logger).get(people).timeout(5);
+        assertThat(everyone.map(firstName).toList(), containsInAnyOrder("dan", "matt", "Bob"));
+        SqlSequence<Record> abandoned = sqlRecords(logger).get(people);
+        Sequence<Record> young = abandoned.filter(where(age, Predicates.lessThan(12)));
+        abandoned.cancel();
+        try {
+            young.toList();
+            fail("Expected the query to be cancelled");
+        } catch (CancellationException expected) {
+        }
+    }
+
     @Test
     public void supportsReadOnlyConnection() throws Exception {
         Connection readOnlyConnection = new ReadOnlyConnection(dataSource);
@@ -99,6 +253,24 @@ public class SqlRecordsTest extends RecordsContract<Records> {
         transaction.commit();
     }
 
+    @Test
+    public void spreadsReadsAcrossReplicasAndHoldsTheConnectionForAnIteration() throws Exception {
+        ReplicaConnection replicas = ReplicaConnection.leastOutstanding(dataSource, dataSource);
+        SqlRecords replicaRecords = new SqlRecords(replicas);
+        Iterator<Record> first = replicaRecords.get(people).iterator();
+        first.next();
+        Iterator<Record> second = replicaRecords.get(people).iterator();
+        second.next();
+        assertThat(replicas.outstanding(0), is(1));
+        assertThat(replicas.outstanding(1), is(1));
+        safeClose(first);
+        safeClose(second);
+        assertThat(replicas.outstanding(0), is(0));
+        assertThat(replicas.outstanding(1), is(0));
+        assertThat(replicaRecords.get(people).size(), NumberMatcher.is(3));
+        replicaRecords.close();
+    }
+
     @Test
     public void existsReturnsFalseIfTableNotDefined() throws Exception {
         Definition sometable = definition("sometable", age);
@@ -109,6 +281,26 @@ public class SqlRecordsTest extends RecordsContract<Records> {
         assertThat(schema.exists(sometable), is(false));
     }
 
+    @Test
+    public void definesIndexesForIndexedAndUniqueFields() throws Exception {
+        Keyword<Integer> id = keyword("id", Integer.class).metadata(Keywords.unique, true);
+        Keyword<String> tag = keyword("tag", String.class).metadata(Keywords.indexed, true);
+        Definition tagged = definition("tagged", id, tag);
+        schema.define(tagged);
+        records.add(tagged, record(id, 1, tag, "a"));
+        try {
+            records.add(tagged, record(id, 1, tag, "b"));
+            fail("Expected the unique index to reject a duplicate id");
+        } catch (Exception expected) {
+        }
+        ResultSet indexes = connection.getMetaData().getIndexInfo(null, null, "TAGGED", false, false);
+        List<String> names = new ArrayList<String>();
+        while (indexes.next()) names.add(indexes.getString("INDEX_NAME").toLowerCase());
+        indexes.close();
+        assertThat(names, hasItems("tagged_uk", "tagged_tag_idx"));
+        schema.undefine(tagged);
+    }
+
     @Test
     public void supportsSpacesInTableNames() throws Exception {
         Definition tableWithSpace = definition("some table", age, firstName);